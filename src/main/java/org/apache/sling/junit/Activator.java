@@ -18,12 +18,17 @@
  */
 package org.apache.sling.junit;
 
+import org.apache.sling.junit.impl.cache.ClassMetadataCache;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 
 /** Used to make our BundleContext available to
  *  JUnit classes that need it but have no
  *  OSGi context.
+ *
+ *  Also drops cached metadata of test classes when
+ *  their bundle is uninstalled or refreshed.
  */
 public class Activator implements BundleActivator {
 
@@ -35,6 +40,11 @@ public class Activator implements BundleActivator {
 
     public void start(BundleContext context) throws Exception {
         bundleContext = context;
+        context.addBundleListener(event -> {
+            if (event.getType() == BundleEvent.UNINSTALLED || event.getType() == BundleEvent.UNRESOLVED) {
+                ClassMetadataCache.invalidateAll(event.getBundle());
+            }
+        });
     }
 
     public void stop(BundleContext context) throws Exception {
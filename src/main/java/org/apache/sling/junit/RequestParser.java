@@ -18,6 +18,10 @@
  */
 package org.apache.sling.junit;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /** Parse information from a request, to define which
  *  tests to run and which renderer to select.
  *
@@ -29,6 +33,7 @@ public class RequestParser implements TestSelector {
     private final String testNameSelector;
     private final String selectedMethodName;
     private final String extension;
+    private final Map<String, String> parameters;
     private static final String EMPTY_STRING = "";
 
     /** Parse subpath, which is in the form
@@ -39,6 +44,17 @@ public class RequestParser implements TestSelector {
      * @param subpath the sub-path
      */
     public RequestParser(String subpath) {
+        this(subpath, Collections.emptyMap());
+    }
+
+    /** Parse subpath as in {@link #RequestParser(String)} and keep supplied
+     *  parameters of the test execution.
+     *
+     * @param subpath the sub-path
+     * @param parameters the test execution parameters, usually the request parameters
+     */
+    public RequestParser(String subpath, Map<String, String> parameters) {
+        this.parameters = Collections.unmodifiableMap(new HashMap<>(parameters));
 
         if (subpath == null) {
             testNameSelector = EMPTY_STRING;
@@ -112,4 +128,9 @@ public class RequestParser implements TestSelector {
     public String getSelectedTestMethodName() {
         return selectedMethodName;
     }
+
+    @Override
+    public String getParameter(String name) {
+        return parameters.get(name);
+    }
 }
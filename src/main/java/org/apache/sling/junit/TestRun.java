@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A test run that was submitted with {@link TestsManager#submitTests(TestSelector)}
+ * and executes asynchronously.
+ */
+@ProviderType
+public interface TestRun {
+
+    enum Status {
+        QUEUED,
+        RUNNING,
+        FINISHED,
+        FAILED
+    }
+
+    /**
+     * Return the id of this test run
+     *
+     * @return the id, as returned by {@link TestsManager#submitTests(TestSelector)}
+     */
+    @NotNull
+    String getId();
+
+    /**
+     * Return the status of this test run
+     *
+     * @return the current status
+     */
+    @NotNull
+    Status getStatus();
+
+    /**
+     * Report the results of this test run using supplied Renderer - does NOT call setup or cleanup on renderer.
+     * While the test run is not done, only the results available so far are reported.
+     *
+     * @param renderer the renderer to use for the reporting
+     * @throws Exception if any error occurs
+     */
+    void render(@NotNull Renderer renderer) throws Exception;
+}
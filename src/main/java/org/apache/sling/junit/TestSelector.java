@@ -50,4 +50,15 @@ public interface TestSelector {
      * @return the extension used to render the results
      */
     String getExtension();
+
+    /**
+     * Return a parameter of the test execution, like the request
+     * parameters of the JUnit servlet.
+     *
+     * @param name the name of the parameter
+     * @return the value of the parameter, or {@code null} if it is not set
+     */
+    default String getParameter(String name) {
+        return null;
+    }
 }
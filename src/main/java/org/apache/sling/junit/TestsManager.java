@@ -37,6 +37,17 @@ public interface TestsManager {
      */
     Collection<String> getTestNames(@Nullable TestSelector selector);
 
+    /**
+     * Return the names of the tests selected by a test class or package name, i.e. the test of that name
+     * and all tests in the package of that name or below it. This matches the selection done by
+     * {@link RequestParser#acceptTestName(String)}, without testing each available test name.
+     *
+     * @param testSelectorString a test class or package name, all tests are returned if empty
+     * @return the sorted names of the selected tests
+     */
+    @NotNull
+    Collection<String> resolveTestNames(@NotNull String testSelectorString);
+
     /**
      * Instantiate test class for specified test
      *
@@ -61,11 +72,25 @@ public interface TestsManager {
      * @param renderer  the renderer to use for the reporting
      * @param selector  the selector used to select tests and test methods; all tests are executed if this is null
      * @throws NoTestCasesFoundException if no tests matching the selector are available
+     * @throws TooManyTestRunsException if too many test runs are running or waiting to run
      * @throws Exception if an error occurs
      */
     void executeTests(@NotNull Renderer renderer, @Nullable TestSelector selector)
             throws NoTestCasesFoundException, Exception;
 
+    /**
+     * Reserve a test run, to find out whether tests are available and whether the test run is admitted
+     * before anything is rendered. The reserved test run waits for other test runs to finish when it is
+     * executed, if needed.
+     *
+     * @param selector  the selector used to select tests and test methods; all tests are executed if this is null
+     * @return the reserved test run, which must be closed once it is executed or not needed anymore
+     * @throws NoTestCasesFoundException if no tests matching the selector are available
+     * @throws TooManyTestRunsException if too many test runs are running or waiting to run
+     */
+    @NotNull
+    ReservedTestRun reserveTestRun(@Nullable TestSelector selector) throws NoTestCasesFoundException;
+
     /**
      * Execute tests and report results using supplied Renderer - does NOT call setup or cleanup on renderer.
      *
@@ -81,6 +106,27 @@ public interface TestsManager {
             @Nullable Collection<String> testNames, @NotNull Renderer renderer, @Nullable TestSelector selector)
             throws Exception;
 
+    /**
+     * Submit tests for asynchronous execution, their results are available through
+     * {@link #getTestRun(String)} with the returned id.
+     *
+     * @param selector  the selector used to select tests and test methods; all tests are executed if this is null
+     * @return the id of the test run
+     * @throws NoTestCasesFoundException if no tests matching the selector are available
+     * @throws TooManyTestRunsException if too many test runs are waiting to be executed
+     */
+    @NotNull
+    String submitTests(@Nullable TestSelector selector) throws NoTestCasesFoundException;
+
+    /**
+     * Return a test run submitted with {@link #submitTests(TestSelector)}
+     *
+     * @param id the id of the test run
+     * @return the test run, or null if it is unknown or was already evicted
+     */
+    @Nullable
+    TestRun getTestRun(@NotNull String id);
+
     /**
      * Clear our internal caches. Useful in automated testing, to make sure changes introduced by recent uploads or configuration or bundles
      * changes are taken into account immediately.
@@ -90,5 +136,45 @@ public interface TestsManager {
     @Deprecated
     void clearCaches();
 
+    /**
+     * A test run reserved with {@link TestsManager#reserveTestRun(TestSelector)}
+     */
+    interface ReservedTestRun extends AutoCloseable {
+        /**
+         * Execute the tests and report results using supplied Renderer - does NOT call setup or cleanup on renderer.
+         * Can only be called once.
+         *
+         * @param renderer  the renderer to use for the reporting
+         * @throws Exception if an error occurs
+         */
+        void execute(@NotNull Renderer renderer) throws Exception;
+
+        /**
+         * Release the reservation, which lets the next test run start
+         */
+        @Override
+        void close();
+    }
+
     class NoTestCasesFoundException extends RuntimeException {}
+
+    /**
+     * Thrown if a test run cannot start because too many test runs are running or waiting to run.
+     */
+    class TooManyTestRunsException extends RuntimeException {
+
+        private final int retryAfterSeconds;
+
+        public TooManyTestRunsException(int retryAfterSeconds) {
+            super("Too many test runs, retry after " + retryAfterSeconds + " seconds");
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * @return the suggested delay before trying again
+         */
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
 }
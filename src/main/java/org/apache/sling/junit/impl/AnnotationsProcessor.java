@@ -18,9 +18,14 @@
  */
 package org.apache.sling.junit.impl;
 
-import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,22 +33,38 @@ import java.util.Objects;
 
 import org.apache.sling.junit.TestObjectProcessor;
 import org.apache.sling.junit.annotations.TestReference;
+import org.apache.sling.junit.impl.cache.ClassMetadataCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Processor for annotations in test classes */
+/** Processor for annotations in test classes.
+ *
+ *  The {@link TestReference} fields of a test class, including those
+ *  of its superclasses, are only looked up once and kept with a setter
+ *  MethodHandle, as a new test object is processed for each test method.
+ *
+ *  The ServiceGetters, and thus their ServiceTrackers, are shared by all
+ *  test objects that are not cleaned up yet, per service type and target
+ *  filter, and closed when the last of these test objects is cleaned up.
+ */
 @Component
 public class AnnotationsProcessor implements TestObjectProcessor {
+    private static final ClassMetadataCache<Class<?>, List<InjectionPoint>> INJECTION_PLANS =
+            new ClassMetadataCache<>(256, testClass -> testClass);
+
     private Logger log = LoggerFactory.getLogger(getClass());
     private BundleContext bundleContext;
-    private Map<Object, List<ServiceGetter<?>>> map;
+    private Map<Object, List<ServiceGetterKey>> map;
+    // guarded by itself
+    private final Map<ServiceGetterKey, PooledServiceGetter> serviceGetterPool = new HashMap<>();
 
     protected void activate(ComponentContext ctx) {
         bundleContext = ctx.getBundleContext();
-        this.map = new IdentityHashMap<>();
+        // test classes might run in parallel
+        this.map = Collections.synchronizedMap(new IdentityHashMap<>());
         if (bundleContext == null) {
             throw new IllegalArgumentException("Null BundleContext in activate()");
         }
@@ -53,61 +74,189 @@ public class AnnotationsProcessor implements TestObjectProcessor {
     protected void deactivate(ComponentContext ctx) {
         bundleContext = null;
         log.debug("{} deactivated", this);
-        for (Map.Entry<Object, List<ServiceGetter<?>>> entry : map.entrySet()) {
-            cleanupTest(entry.getKey());
-        }
         map.clear();
+        synchronized (serviceGetterPool) {
+            for (PooledServiceGetter pooled : serviceGetterPool.values()) {
+                pooled.serviceGetter.close();
+            }
+            serviceGetterPool.clear();
+        }
     }
 
     /** Process annotations on the test object */
     @Override
     public Object process(Object testObject) throws Exception {
         log.debug("processing {}", testObject);
-        map.put(testObject, new ArrayList<>());
-        for (Field f : testObject.getClass().getDeclaredFields()) {
-            if (f.isAnnotationPresent(TestReference.class)) {
-                processTestReference(testObject, f);
+        final List<ServiceGetterKey> serviceGetterKeys = new ArrayList<>();
+        map.put(testObject, serviceGetterKeys);
+        try {
+            final List<InjectionPoint> injectionPoints =
+                    INJECTION_PLANS.get(testObject.getClass(), this::createInjectionPlan);
+            for (InjectionPoint injectionPoint : injectionPoints) {
+                processTestReference(testObject, injectionPoint, serviceGetterKeys);
             }
+        } catch (Exception | Error e) {
+            // a test object that cannot be processed is not run, and thus never cleaned up
+            cleanupTest(testObject);
+            throw e;
         }
         return testObject;
     }
 
     public void cleanupTest(Object test) {
-        List<ServiceGetter<?>> serviceGetters = this.map.remove(test);
-        for (int i = 0; i < serviceGetters.size(); i++) {
-            serviceGetters.get(i).close();
+        List<ServiceGetterKey> serviceGetterKeys = this.map.remove(test);
+        if (serviceGetterKeys != null) {
+            for (int i = 0; i < serviceGetterKeys.size(); i++) {
+                releaseServiceGetter(serviceGetterKeys.get(i));
+            }
+        }
+    }
+
+    /** Find the TestReference fields of the test class and its superclasses */
+    private List<InjectionPoint> createInjectionPlan(Class<?> testClass) {
+        final List<InjectionPoint> injectionPoints = new ArrayList<>();
+        for (Class<?> c = testClass; c != null && c != Object.class; c = c.getSuperclass()) {
+            final List<InjectionPoint> declared = new ArrayList<>();
+            for (Field f : c.getDeclaredFields()) {
+                final TestReference testReference = f.getAnnotation(TestReference.class);
+                if (testReference != null) {
+                    declared.add(new InjectionPoint(f, testReference.target()));
+                }
+            }
+            // superclass fields first, like constructors initialize them
+            injectionPoints.addAll(0, declared);
         }
+        log.debug("{} has {} TestReference fields", testClass.getName(), injectionPoints.size());
+        return Collections.unmodifiableList(injectionPoints);
     }
 
     /** Process the TestReference annotation to inject services into fields */
-    private void processTestReference(Object testObject, Field f) throws Exception {
+    private void processTestReference(
+            Object testObject, InjectionPoint injectionPoint, List<ServiceGetterKey> serviceGetterKeys)
+            throws Exception {
         if (bundleContext == null) {
             final String msg = "Null BundleContext in processTestReference(), not activated?";
             log.error(msg);
             throw new IllegalArgumentException(msg);
         }
-        final Class<?> serviceType = f.getType();
-        Annotation[] testReferences = f.getDeclaredAnnotations();
-        if (Objects.nonNull(testReferences) && testReferences.length != 0) {
-            TestReference testReference = (TestReference) testReferences[0];
-
-            final Object service = getService(serviceType, testReference.target(), testObject);
-            if (service != null) {
-                f.setAccessible(true);
-                f.set(testObject, service);
-                log.debug("Injected service {} into field {}", serviceType.getName(), f.getName());
-            } else {
-                log.warn("Service {} not found for field {}", serviceType.getName(), f.getName());
+        final Object service = getService(injectionPoint.serviceGetterKey, serviceGetterKeys);
+        if (service != null) {
+            injectionPoint.inject(testObject, service);
+            log.debug(
+                    "Injected service {} into field {}",
+                    injectionPoint.serviceType().getName(),
+                    injectionPoint.name);
+        } else {
+            log.warn(
+                    "Service {} not found for field {}",
+                    injectionPoint.serviceType().getName(),
+                    injectionPoint.name);
+        }
+    }
+
+    private Object getService(ServiceGetterKey key, List<ServiceGetterKey> serviceGetterKeys) {
+        final ServiceGetter<?> serviceGetter;
+        synchronized (serviceGetterPool) {
+            PooledServiceGetter pooled = serviceGetterPool.get(key);
+            if (pooled == null) {
+                // target may be used to get a specific service implementation of the interface
+                pooled = new PooledServiceGetter(ServiceGetter.create(bundleContext, key.serviceType, key.target));
+                serviceGetterPool.put(key, pooled);
+            }
+            pooled.references++;
+            serviceGetter = pooled.serviceGetter;
+        }
+        serviceGetterKeys.add(key);
+        return serviceGetter.getService();
+    }
+
+    private void releaseServiceGetter(ServiceGetterKey key) {
+        synchronized (serviceGetterPool) {
+            final PooledServiceGetter pooled = serviceGetterPool.get(key);
+            if (pooled != null && --pooled.references == 0) {
+                serviceGetterPool.remove(key);
+                pooled.serviceGetter.close();
+            }
+        }
+    }
+
+    /** Return the number of ServiceGetters in use */
+    int getServiceGetterCount() {
+        synchronized (serviceGetterPool) {
+            return serviceGetterPool.size();
+        }
+    }
+
+    /** Identifies the ServiceGetters that can be shared */
+    private static class ServiceGetterKey {
+        private final Class<?> serviceType;
+        private final String target;
+
+        ServiceGetterKey(Class<?> serviceType, String target) {
+            this.serviceType = serviceType;
+            this.target = target == null ? "" : target.trim();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ServiceGetterKey)) {
+                return false;
             }
+            final ServiceGetterKey other = (ServiceGetterKey) o;
+            return serviceType == other.serviceType && target.equals(other.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serviceType, target);
+        }
+    }
+
+    private static class PooledServiceGetter {
+        private final ServiceGetter<?> serviceGetter;
+        // guarded by serviceGetterPool
+        private int references;
+
+        PooledServiceGetter(ServiceGetter<?> serviceGetter) {
+            this.serviceGetter = serviceGetter;
         }
     }
 
-    private Object getService(Class<?> c, String target, Object testObj) {
-        // target may be used to get a specific service implementation of the interface, c
-        Object result = null;
-        final ServiceGetter<? extends Object> serviceGetter = ServiceGetter.create(bundleContext, c, target);
-        result = serviceGetter.getService();
-        this.map.get(testObj).add(serviceGetter);
-        return result;
+    /** A TestReference field with a setter that takes the test object and the service */
+    private static class InjectionPoint {
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final String name;
+        private final ServiceGetterKey serviceGetterKey;
+        private final MethodHandle setter;
+
+        InjectionPoint(Field f, String target) {
+            this.name = f.getName();
+            this.serviceGetterKey = new ServiceGetterKey(f.getType(), target);
+            f.setAccessible(true);
+            try {
+                MethodHandle handle = MethodHandles.lookup().unreflectSetter(f);
+                if (Modifier.isStatic(f.getModifiers())) {
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                }
+                this.setter = handle.asType(SETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot set TestReference field " + f, e);
+            }
+        }
+
+        Class<?> serviceType() {
+            return serviceGetterKey.serviceType;
+        }
+
+        void inject(Object testObject, Object service) throws Exception {
+            try {
+                setter.invokeExact(testObject, service);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
     }
 }
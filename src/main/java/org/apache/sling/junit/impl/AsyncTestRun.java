@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.junit.Renderer;
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.apache.sling.junit.TestRun;
+import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.TestsManager;
+import org.jetbrains.annotations.NotNull;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** A test run that executes asynchronously and records what it
+ *  renders, so that it can be replayed into any Renderer later.
+ */
+class AsyncTestRun implements TestRun {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncTestRun.class);
+
+    private final String id;
+
+    private final TestSelector selector;
+
+    private final long submittedTime = System.currentTimeMillis();
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile long doneTime;
+
+    private final List<Event> events = new ArrayList<>();
+
+    AsyncTestRun(String id, TestSelector selector) {
+        this.id = id;
+        this.selector = selector;
+    }
+
+    @NotNull
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @NotNull
+    @Override
+    public Status getStatus() {
+        return status;
+    }
+
+    boolean isDone() {
+        return status == Status.FINISHED || status == Status.FAILED;
+    }
+
+    /** @return the time at which this run was done, or the time it was submitted if it is not done yet */
+    long getLastModified() {
+        return isDone() ? doneTime : submittedTime;
+    }
+
+    void execute(TestsManager testsManager) {
+        status = Status.RUNNING;
+        log.info("Executing test run {}: {}", id, selector);
+        try {
+            testsManager.executeTests(new RecordingRenderer(), selector);
+            status = Status.FINISHED;
+        } catch (Exception e) {
+            log.warn("Test run {} failed", id, e);
+            record(renderer -> renderer.info("failure", "Test execution failed: " + e));
+            status = Status.FAILED;
+        } finally {
+            doneTime = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void render(@NotNull Renderer renderer) throws Exception {
+        final List<Event> recorded;
+        synchronized (events) {
+            recorded = new ArrayList<>(events);
+        }
+        // renderers read the test context output when a test is finished
+        final boolean createContext = !SlingTestContextProvider.hasContext();
+        if (createContext) {
+            SlingTestContextProvider.createContext();
+        }
+        try {
+            for (Event event : recorded) {
+                event.replay(renderer);
+            }
+        } finally {
+            if (createContext) {
+                SlingTestContextProvider.deleteContext();
+            }
+        }
+    }
+
+    private void record(Event event) {
+        synchronized (events) {
+            events.add(event);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void replay(Renderer renderer) throws Exception;
+    }
+
+    /** Records all calls, test run events are serialized by the TestsManager */
+    private class RecordingRenderer extends RunListener implements Renderer {
+
+        @Override
+        public boolean appliesTo(TestSelector selector) {
+            return false;
+        }
+
+        @Override
+        public void setup(HttpServletResponse response, String pageTitle) {
+            // not called by the TestsManager
+        }
+
+        @Override
+        public void cleanup() {
+            // not called by the TestsManager
+        }
+
+        @Override
+        public void list(String role, Collection<String> data) {
+            final List<String> copy = new ArrayList<>(data);
+            record(renderer -> renderer.list(role, copy));
+        }
+
+        @Override
+        public void info(String role, String info) {
+            record(renderer -> renderer.info(role, info));
+        }
+
+        @Override
+        public void title(int level, String title) {
+            record(renderer -> renderer.title(level, title));
+        }
+
+        @Override
+        public void link(String info, String url, String method) {
+            record(renderer -> renderer.link(info, url, method));
+        }
+
+        @Override
+        public RunListener getRunListener() {
+            return this;
+        }
+
+        @Override
+        public String getExtension() {
+            return null;
+        }
+
+        @Override
+        public void testRunStarted(Description description) {
+            record(renderer -> renderer.getRunListener().testRunStarted(description));
+        }
+
+        @Override
+        public void testRunFinished(Result result) {
+            record(renderer -> renderer.getRunListener().testRunFinished(result));
+        }
+
+        @Override
+        public void testSuiteStarted(Description description) {
+            record(renderer -> renderer.getRunListener().testSuiteStarted(description));
+        }
+
+        @Override
+        public void testSuiteFinished(Description description) {
+            record(renderer -> renderer.getRunListener().testSuiteFinished(description));
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            record(renderer -> renderer.getRunListener().testStarted(description));
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            final Map<String, Object> output = SlingTestContextProvider.hasContext()
+                    ? new HashMap<>(SlingTestContextProvider.getContext().output())
+                    : new HashMap<>();
+            record(renderer -> {
+                final Map<String, Object> current =
+                        SlingTestContextProvider.getContext().output();
+                current.clear();
+                current.putAll(output);
+                renderer.getRunListener().testFinished(description);
+            });
+        }
+
+        @Override
+        public void testFailure(Failure failure) {
+            record(renderer -> renderer.getRunListener().testFailure(failure));
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            record(renderer -> renderer.getRunListener().testAssumptionFailure(failure));
+        }
+
+        @Override
+        public void testIgnored(Description description) {
+            record(renderer -> renderer.getRunListener().testIgnored(description));
+        }
+    }
+}
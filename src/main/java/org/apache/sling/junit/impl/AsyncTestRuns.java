@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.TestsManager;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Executes submitted test runs one after the other and keeps
+ *  them available until they are evicted. Done test runs are
+ *  evicted once they are older than the configured maximum age,
+ *  or if there are more of them than the configured maximum.
+ *  Test runs are rejected if too many of them wait to be executed.
+ */
+class AsyncTestRuns implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncTestRuns.class);
+
+    private final int maxDoneRuns;
+
+    private final long maxAgeMsec;
+
+    private final int retryAfterSeconds;
+
+    /** By submission order, guarded by this */
+    private final Map<String, AsyncTestRun> runs = new LinkedHashMap<>();
+
+    private final ExecutorService executor;
+
+    /**
+     * @param maxDoneRuns maximum number of done test runs to keep
+     * @param maxAgeMsec maximum time to keep a done test run
+     * @param maxQueuedRuns maximum number of test runs that wait to be executed
+     * @param retryAfterSeconds suggested delay before trying again when a test run is rejected
+     */
+    AsyncTestRuns(int maxDoneRuns, long maxAgeMsec, int maxQueuedRuns, int retryAfterSeconds) {
+        this.maxDoneRuns = maxDoneRuns;
+        this.maxAgeMsec = maxAgeMsec;
+        this.retryAfterSeconds = retryAfterSeconds;
+        // queued test runs hold all their results, so their number is limited
+        final BlockingQueue<Runnable> queue =
+                maxQueuedRuns > 0 ? new ArrayBlockingQueue<>(maxQueuedRuns) : new SynchronousQueue<>();
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+            final Thread thread = new Thread(runnable, "sling-junit-async-test-run");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Submit a test run
+     *  @return the id of the test run
+     *  @throws TestsManager.TooManyTestRunsException if too many test runs wait to be executed
+     */
+    String submit(TestsManager testsManager, TestSelector selector) {
+        final AsyncTestRun run = new AsyncTestRun(UUID.randomUUID().toString(), selector);
+        synchronized (this) {
+            evict();
+            runs.put(run.getId(), run);
+        }
+        try {
+            executor.execute(() -> run.execute(testsManager));
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                runs.remove(run.getId());
+            }
+            log.warn("Rejecting test run, too many test runs wait to be executed: {}", selector);
+            throw new TestsManager.TooManyTestRunsException(retryAfterSeconds);
+        }
+        log.info("Test run {} submitted: {}", run.getId(), selector);
+        return run.getId();
+    }
+
+    @Nullable
+    synchronized AsyncTestRun get(String id) {
+        evict();
+        return runs.get(id);
+    }
+
+    private void evict() {
+        final long oldest = System.currentTimeMillis() - maxAgeMsec;
+        final List<AsyncTestRun> done = new ArrayList<>();
+        for (Iterator<AsyncTestRun> it = runs.values().iterator(); it.hasNext(); ) {
+            final AsyncTestRun run = it.next();
+            if (run.isDone()) {
+                if (run.getLastModified() < oldest) {
+                    log.debug("Evicting test run {}, it is older than {} msec", run.getId(), maxAgeMsec);
+                    it.remove();
+                } else {
+                    done.add(run);
+                }
+            }
+        }
+        for (int i = 0; i < done.size() - maxDoneRuns; i++) {
+            log.debug(
+                    "Evicting test run {}, more than {} test runs are done",
+                    done.get(i).getId(),
+                    maxDoneRuns);
+            runs.remove(done.get(i).getId());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (this) {
+            runs.clear();
+        }
+    }
+}
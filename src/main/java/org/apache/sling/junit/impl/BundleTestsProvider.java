@@ -19,20 +19,30 @@
 package org.apache.sling.junit.impl;
 
 import java.net.URL;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
 import org.apache.sling.junit.TestsProvider;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleEvent;
@@ -47,6 +57,10 @@ import org.slf4j.LoggerFactory;
 /** A TestProvider that gets test classes from bundles
  *  that have a Sling-Test-Regexp header and corresponding
  *  exported classes.
+ *
+ *  Bundles are scanned for test classes on a bounded pool
+ *  of worker threads, to avoid blocking the framework's
+ *  event thread while many bundles are started.
  */
 @Component(service = TestsProvider.class)
 public class BundleTestsProvider extends AbstractTestsProvider {
@@ -55,64 +69,298 @@ public class BundleTestsProvider extends AbstractTestsProvider {
 
     public static final String SLING_TEST_REGEXP = "Sling-Test-Regexp";
 
-    private TestClassesTracker tracker;
+    /** Name of the file in our bundle's data area that holds the test classes index */
+    static final String INDEX_FILE_NAME = "test-classes-index.properties";
+
+    public @interface Config {
+        /** Number of threads used to scan bundles for test classes,
+         *  0 to scan them synchronously on the thread that starts the bundle.
+         */
+        int scan_pool_size() default 4;
+    }
+
+    private BundleContext bundleContext;
+
+    /** Guards the index field and the saving of the index */
+    private final Object indexLock = new Object();
+
+    private TestClassesIndex index;
+
+    private ExecutorService scanExecutor;
+
+    private volatile TestClassesTracker tracker;
+
+    /** Scans of the bundles found when activating, the index is saved once they are done */
+    private CompletableFuture<Void> startupScans;
 
     @Activate
-    protected void activate(BundleContext ctx) {
-        tracker = new TestClassesTracker(ctx);
+    protected void activate(BundleContext ctx, Config config) {
+        bundleContext = ctx;
+        final TestClassesIndex startupIndex = new TestClassesIndex(ctx.getDataFile(INDEX_FILE_NAME));
+        synchronized (indexLock) {
+            index = startupIndex;
+        }
+        scanExecutor = createScanExecutor(config.scan_pool_size());
+        tracker = new TestClassesTracker(ctx, startupIndex, scanExecutor);
         tracker.open();
+
+        startupScans = CompletableFuture.allOf(tracker.getTracked().values().toArray(new CompletableFuture[0]));
+        startupScans.whenComplete((result, error) -> {
+            synchronized (indexLock) {
+                // once deactivated, the BundleContext is invalid and deactivate() saved the index
+                if (index != startupIndex) {
+                    return;
+                }
+                LOG.info(
+                        "Test classes index used for {} bundles, skipped scanning {}",
+                        startupIndex.getHitCount() + startupIndex.getMissCount(),
+                        startupIndex.getHitCount());
+                saveIndex(ctx, startupIndex);
+            }
+        });
     }
 
     @Deactivate
     protected void deactivate() {
+        final TestClassesIndex toSave;
+        synchronized (indexLock) {
+            toSave = index;
+            index = null;
+        }
+        if (startupScans != null) {
+            startupScans.cancel(false);
+            startupScans = null;
+        }
         if (tracker != null) {
             tracker.close();
             tracker = null;
         }
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+            scanExecutor = null;
+        }
+        if (toSave != null) {
+            synchronized (indexLock) {
+                saveIndex(bundleContext, toSave);
+            }
+        }
+        bundleContext = null;
+    }
+
+    @Nullable
+    private static ExecutorService createScanExecutor(int poolSize) {
+        if (poolSize <= 0) {
+            return null;
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(poolSize, runnable -> {
+            final Thread thread = new Thread(runnable, "sling-junit-bundle-scanner-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void saveIndex(BundleContext ctx, TestClassesIndex index) {
+        index.save(bundleId -> ctx.getBundle(bundleId) != null);
+    }
+
+    /** Number of bundles whose test classes were found in the test classes index */
+    long getIndexHitCount() {
+        synchronized (indexLock) {
+            return index == null ? 0 : index.getHitCount();
+        }
+    }
+
+    /** Number of bundles that had to be scanned for test classes */
+    long getIndexMissCount() {
+        synchronized (indexLock) {
+            return index == null ? 0 : index.getMissCount();
+        }
     }
 
     public Class<?> createTestClass(String testName) throws ClassNotFoundException {
-        final Bundle bundle = tracker.getTracked().entrySet().stream()
-                .filter(entry -> entry.getValue().contains(testName))
-                .map(Map.Entry::getKey)
-                .findFirst()
-                .orElseThrow(() -> new ClassNotFoundException("No Bundle found that supplies test class " + testName));
+        Bundle bundle = tracker.getBundle(testName);
+        if (bundle == null) {
+            // the test class might be supplied by a bundle that is still being scanned
+            tracker.awaitPendingScans();
+            bundle = tracker.getBundle(testName);
+        }
+        if (bundle == null) {
+            throw new ClassNotFoundException("No Bundle found that supplies test class " + testName);
+        }
         return bundle.loadClass(testName);
     }
 
     public List<String> getTestNames() {
-        return tracker.getTracked().values().stream()
-                .flatMap(Collection::stream)
-                .collect(Collectors.toList());
+        tracker.awaitPendingScans();
+        return tracker.getTestNames();
     }
 
-    private static class TestClassesTracker extends BundleTracker<Set<String>> {
-        public TestClassesTracker(BundleContext ctx) {
+    /** Return a counter that changes whenever a bundle that supplies test classes is added,
+     *  scanned or removed, or -1 if not active
+     */
+    long getChangeCount() {
+        final TestClassesTracker t = tracker;
+        return t == null ? -1 : t.getChangeCount();
+    }
+
+    private static class TestClassesTracker extends BundleTracker<CompletableFuture<Set<String>>> {
+        private final TestClassesIndex index;
+
+        private final Executor scanExecutor;
+
+        /** Reverse index of test class name to the bundle that supplies it */
+        private final Map<String, Bundle> testClassBundles = new ConcurrentHashMap<>();
+
+        /** Test class names supplied by more than one bundle */
+        private final Set<String> conflicts = ConcurrentHashMap.newKeySet();
+
+        /** Guards updates of the reverse index against concurrent bundle removal */
+        private final Object lock = new Object();
+
+        private final AtomicLong changeCount = new AtomicLong();
+
+        public TestClassesTracker(BundleContext ctx, TestClassesIndex index, @Nullable Executor scanExecutor) {
             super(ctx, Bundle.ACTIVE, null);
+            this.index = index;
+            this.scanExecutor = scanExecutor;
         }
 
         @Override
-        public Set<String> addingBundle(Bundle bundle, BundleEvent event) {
+        public CompletableFuture<Set<String>> addingBundle(Bundle bundle, BundleEvent event) {
             super.addingBundle(bundle, event);
             if (isFragment(bundle)) {
                 return null;
             }
-            final Set<String> testClasses = getTestClasses(bundle);
-            return testClasses.isEmpty() ? null : testClasses;
-        }
-
-        /** Get test classes that bundle b provides (as done in Felix/Sigil) */
-        @NotNull
-        private static Set<String> getTestClasses(Bundle bundle) {
             final String headerValue = getSlingTestRegexp(bundle);
             if (headerValue == null) {
                 LOG.debug(
                         "Bundle '{}' does not have {} header, not looking for test classes",
                         bundle.getSymbolicName(),
                         SLING_TEST_REGEXP);
-                return Collections.emptySet();
+                return null;
+            }
+            // count the change before the scan, so that a snapshot of the test names taken
+            // meanwhile is stale and waits for the pending scans when it is rebuilt
+            changeCount.incrementAndGet();
+            final CompletableFuture<Set<String>> scan = scanExecutor == null
+                    ? CompletableFuture.completedFuture(getTestClasses(bundle, headerValue))
+                    : CompletableFuture.supplyAsync(() -> getTestClasses(bundle, headerValue), scanExecutor);
+            final CompletableFuture<Set<String>> testClasses = new CompletableFuture<>();
+            scan.whenComplete((result, error) -> {
+                if (error != null) {
+                    testClasses.completeExceptionally(error);
+                    return;
+                }
+                synchronized (lock) {
+                    if (!testClasses.isCancelled()) {
+                        register(bundle, result);
+                    }
+                }
+                testClasses.complete(result);
+            });
+            return testClasses;
+        }
+
+        @Override
+        public void removedBundle(Bundle bundle, BundleEvent event, CompletableFuture<Set<String>> testClasses) {
+            synchronized (lock) {
+                testClasses.cancel(false);
+                unregister(bundle);
+            }
+        }
+
+        @Nullable
+        Bundle getBundle(String testName) {
+            return testClassBundles.get(testName);
+        }
+
+        List<String> getTestNames() {
+            return new ArrayList<>(testClassBundles.keySet());
+        }
+
+        long getChangeCount() {
+            return changeCount.get();
+        }
+
+        /** Wait for the scans of all tracked bundles that are still pending */
+        void awaitPendingScans() {
+            for (Map.Entry<Bundle, CompletableFuture<Set<String>>> entry :
+                    getTracked().entrySet()) {
+                if (!entry.getValue().isDone()) {
+                    join(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        @NotNull
+        private static Set<String> join(Bundle bundle, Future<Set<String>> scan) {
+            try {
+                return scan.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                LOG.debug("Scan of bundle '{}' was cancelled", bundle.getSymbolicName());
+            } catch (ExecutionException e) {
+                LOG.warn("Unable to scan bundle '{}' for test classes", bundle.getSymbolicName(), e.getCause());
             }
+            return Collections.emptySet();
+        }
 
+        private void register(Bundle bundle, Set<String> testClasses) {
+            changeCount.incrementAndGet();
+            for (String testClass : testClasses) {
+                final Bundle existing = testClassBundles.putIfAbsent(testClass, bundle);
+                if (existing != null && !existing.equals(bundle)) {
+                    conflicts.add(testClass);
+                    LOG.warn(
+                            "Test class '{}' is supplied by bundles '{}' and '{}', using the one from '{}'",
+                            testClass,
+                            existing.getSymbolicName(),
+                            bundle.getSymbolicName(),
+                            existing.getSymbolicName());
+                }
+            }
+        }
+
+        private void unregister(Bundle bundle) {
+            changeCount.incrementAndGet();
+            final List<String> removed = new ArrayList<>();
+            testClassBundles.entrySet().removeIf(entry -> {
+                if (entry.getValue().equals(bundle)) {
+                    removed.add(entry.getKey());
+                    return true;
+                }
+                return false;
+            });
+            for (String testClass : removed) {
+                if (conflicts.contains(testClass)) {
+                    reassign(testClass, bundle);
+                }
+            }
+        }
+
+        /** Let another tracked bundle supply a test class that the removed bundle supplied so far */
+        private void reassign(String testClass, Bundle removedBundle) {
+            for (Map.Entry<Bundle, CompletableFuture<Set<String>>> entry :
+                    getTracked().entrySet()) {
+                final Bundle bundle = entry.getKey();
+                final CompletableFuture<Set<String>> scan = entry.getValue();
+                if (!bundle.equals(removedBundle)
+                        && scan.isDone()
+                        && !scan.isCompletedExceptionally()
+                        && scan.join().contains(testClass)) {
+                    testClassBundles.put(testClass, bundle);
+                    LOG.info("Test class '{}' is now supplied by bundle '{}'", testClass, bundle.getSymbolicName());
+                    return;
+                }
+            }
+            conflicts.remove(testClass);
+        }
+
+        /** Get test classes that bundle b provides (as done in Felix/Sigil) */
+        @NotNull
+        private Set<String> getTestClasses(Bundle bundle, String headerValue) {
             Predicate<String> isTestClass;
             try {
                 final Pattern testClassRegexp = Pattern.compile(headerValue);
@@ -127,6 +375,15 @@ public class BundleTestsProvider extends AbstractTestsProvider {
                 return Collections.emptySet();
             }
 
+            final Set<String> indexed = index.get(bundle, headerValue);
+            if (indexed != null) {
+                LOG.info(
+                        "{} test classes found in test classes index for bundle '{}'",
+                        indexed.size(),
+                        bundle.getSymbolicName());
+                return indexed;
+            }
+
             Enumeration<URL> classUrls = bundle.findEntries("", "*.class", true);
             final Set<String> result = new LinkedHashSet<>();
             while (classUrls.hasMoreElements()) {
@@ -145,6 +402,7 @@ public class BundleTestsProvider extends AbstractTestsProvider {
             }
 
             LOG.info("{} test classes found in bundle '{}'", result.size(), bundle.getSymbolicName());
+            index.put(bundle, headerValue, result);
             return result;
         }
 
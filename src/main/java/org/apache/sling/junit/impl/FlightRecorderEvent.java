@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/** Java Flight Recorder events of the test lifecycle, so that recordings
+ *  show which test caused the sampled CPU, allocation and lock activity.
+ *
+ *  This bundle is built for Java 8, which has no jdk.jfr API, so the event
+ *  types are defined at runtime with the jdk.jfr.EventFactory of Java 11 and
+ *  later. If that is not available, or no recording enables an event type,
+ *  {@link #begin()} costs a single check and returns null.
+ */
+public enum FlightRecorderEvent {
+    TEST_RUN("TestRun", "Test Run", "selector"),
+    TEST_SUITE("TestSuite", "Test Suite", "suite"),
+    TEST("Test", "Test", "test", "result"),
+    DISCOVERY("Discovery", "Test Discovery", "selector"),
+    STARTUP_WAIT("StartupWait", "System Startup Wait", "pending"),
+    SERVICE_RESOLUTION("ServiceResolution", "Service Resolution", "serviceType", "filter");
+
+    private final EventType type;
+
+    FlightRecorderEvent(String name, String label, String... fieldNames) {
+        type = Jfr.INSTANCE == null
+                ? null
+                : Jfr.INSTANCE.createType("org.apache.sling.junit." + name, label, fieldNames);
+    }
+
+    /** Begin an event of this type
+     *  @return the event to pass to {@link #commit}, or null if this event type is not enabled
+     */
+    @Nullable
+    public Object begin() {
+        return type != null && type.isEnabled() ? type.begin() : null;
+    }
+
+    /** End and commit an event, does nothing if it is null
+     *  @param event as returned by {@link #begin()}
+     *  @param values the values of the fields of this event type, in the order of their definition
+     */
+    public void commit(@Nullable Object event, Object... values) {
+        if (event != null) {
+            type.commit(event, values);
+        }
+    }
+
+    /** An event type with the method handles of its hot path, adapted to exact types
+     *  so that {@link MethodHandle#invokeExact} does not need to convert arguments.
+     */
+    private static class EventType {
+
+        private final Jfr jfr;
+
+        private final Object factory;
+
+        private final MethodHandle isEnabled;
+
+        EventType(Jfr jfr, Object factory, MethodHandle isEnabled) {
+            this.jfr = jfr;
+            this.factory = factory;
+            this.isEnabled = isEnabled;
+        }
+
+        boolean isEnabled() {
+            try {
+                return (boolean) isEnabled.invokeExact();
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+
+        Object begin() {
+            try {
+                final Object event = (Object) jfr.newEvent.invokeExact(factory);
+                jfr.begin.invokeExact(event);
+                return event;
+            } catch (Throwable t) {
+                Jfr.log.debug("Unable to begin flight recorder event", t);
+                return null;
+            }
+        }
+
+        void commit(Object event, Object... values) {
+            try {
+                for (int i = 0; i < values.length; i++) {
+                    jfr.set.invokeExact(event, i, (Object) (values[i] == null ? null : String.valueOf(values[i])));
+                }
+                jfr.end.invokeExact(event);
+                jfr.commit.invokeExact(event);
+            } catch (Throwable t) {
+                Jfr.log.debug("Unable to commit flight recorder event", t);
+            }
+        }
+    }
+
+    /** Method handles of the jdk.jfr API, looked up with the system class loader
+     *  as the framework does not necessarily export the jdk.jfr package.
+     */
+    static class Jfr {
+
+        private static final Logger log = LoggerFactory.getLogger(FlightRecorderEvent.class);
+
+        private static final Jfr INSTANCE = create(ClassLoader.getSystemClassLoader());
+
+        private final Class<?> nameAnnotation;
+
+        private final Class<?> labelAnnotation;
+
+        private final Class<?> categoryAnnotation;
+
+        private final MethodHandle newAnnotationElement;
+
+        private final MethodHandle newValueDescriptor;
+
+        private final MethodHandle createFactory;
+
+        private final MethodHandle getEventType;
+
+        private final MethodHandle isEnabled;
+
+        private final MethodHandle newEvent;
+
+        private final MethodHandle begin;
+
+        private final MethodHandle set;
+
+        private final MethodHandle end;
+
+        private final MethodHandle commit;
+
+        private Jfr(ClassLoader loader) throws ReflectiveOperationException {
+            final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", false, loader);
+            final Class<?> eventType = Class.forName("jdk.jfr.EventType", false, loader);
+            final Class<?> event = Class.forName("jdk.jfr.Event", false, loader);
+            final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement", false, loader);
+            final Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, loader);
+            nameAnnotation = Class.forName("jdk.jfr.Name", false, loader);
+            labelAnnotation = Class.forName("jdk.jfr.Label", false, loader);
+            categoryAnnotation = Class.forName("jdk.jfr.Category", false, loader);
+
+            final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newAnnotationElement =
+                    lookup.findConstructor(annotationElement, methodType(void.class, Class.class, Object.class));
+            newValueDescriptor = lookup.findConstructor(
+                    valueDescriptor, methodType(void.class, Class.class, String.class, List.class));
+            createFactory = lookup.findStatic(eventFactory, "create", methodType(eventFactory, List.class, List.class));
+            getEventType = lookup.findVirtual(eventFactory, "getEventType", methodType(eventType));
+            isEnabled = lookup.findVirtual(eventType, "isEnabled", methodType(boolean.class));
+            newEvent = lookup.findVirtual(eventFactory, "newEvent", methodType(event))
+                    .asType(methodType(Object.class, Object.class));
+            begin = lookup.findVirtual(event, "begin", methodType(void.class))
+                    .asType(methodType(void.class, Object.class));
+            set = lookup.findVirtual(event, "set", methodType(void.class, int.class, Object.class))
+                    .asType(methodType(void.class, Object.class, int.class, Object.class));
+            end = lookup.findVirtual(event, "end", methodType(void.class)).asType(methodType(void.class, Object.class));
+            commit = lookup.findVirtual(event, "commit", methodType(void.class))
+                    .asType(methodType(void.class, Object.class));
+        }
+
+        /** @return the jdk.jfr API found with the supplied class loader, or null if it is not available */
+        @Nullable
+        static Jfr create(ClassLoader loader) {
+            try {
+                return new Jfr(loader);
+            } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+                log.debug("Java Flight Recorder API not available, no test lifecycle events are recorded", e);
+                return null;
+            }
+        }
+
+        @Nullable
+        EventType createType(String name, String label, String... fieldNames) {
+            try {
+                final List<Object> annotations = Arrays.asList(
+                        newAnnotationElement.invoke(nameAnnotation, name),
+                        newAnnotationElement.invoke(labelAnnotation, label),
+                        newAnnotationElement.invoke(categoryAnnotation, new String[] {"Sling", "JUnit"}));
+                final List<Object> fields = new ArrayList<>();
+                for (String fieldName : fieldNames) {
+                    fields.add(newValueDescriptor.invoke(String.class, fieldName, Collections.emptyList()));
+                }
+                final Object factory = createFactory.invoke(annotations, fields);
+                return new EventType(this, factory, isEnabled.bindTo(getEventType.invoke(factory)));
+            } catch (Throwable t) {
+                log.debug("Unable to create flight recorder event type {}", name, t);
+                return null;
+            }
+        }
+    }
+}
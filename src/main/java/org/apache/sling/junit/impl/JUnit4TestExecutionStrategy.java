@@ -18,29 +18,78 @@
  */
 package org.apache.sling.junit.impl;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.sling.junit.TestSelector;
+import org.junit.runner.Computer;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JUnit4TestExecutionStrategy implements TestExecutionStrategy {
 
+    private static final Logger log = LoggerFactory.getLogger(JUnit4TestExecutionStrategy.class);
+
     private final TestsManagerImpl testsManager;
 
+    private final boolean parallelByDefault;
+
+    private final int parallelThreads;
+
+    /** Shared by all parallel runs, created on demand */
+    private ExecutorService parallelExecutor;
+
     public JUnit4TestExecutionStrategy(TestsManagerImpl testsManager) {
+        this(testsManager, false, 0);
+    }
+
+    /**
+     * @param parallelByDefault whether test classes run in parallel if not specified by the {@link TestSelector}
+     * @param parallelThreads maximum number of test classes that run in parallel, 0 for the number of processors
+     */
+    public JUnit4TestExecutionStrategy(TestsManagerImpl testsManager, boolean parallelByDefault, int parallelThreads) {
         this.testsManager = testsManager;
+        this.parallelByDefault = parallelByDefault;
+        this.parallelThreads =
+                parallelThreads > 0 ? parallelThreads : Runtime.getRuntime().availableProcessors();
     }
 
     @Override
     public void execute(TestSelector selector, RunListener runListener) throws Exception {
         final JUnitCore junit = new JUnitCore();
         junit.addListener(runListener);
-        final Request request = testsManager.createTestRequest(selector, Request::method, Request::classes);
+        final Computer computer = TestExecutionStrategy.isParallel(selector, parallelByDefault)
+                ? new ParallelClassesComputer(getParallelExecutor())
+                : null;
+        final Request request = testsManager.createTestRequest(
+                selector,
+                Request::method,
+                classes -> computer == null ? Request.classes(classes) : Request.classes(computer, classes));
         junit.run(request);
     }
 
+    private synchronized ExecutorService getParallelExecutor() {
+        if (parallelExecutor == null) {
+            log.info("Running test classes in parallel on up to {} threads", parallelThreads);
+            final AtomicInteger threadCount = new AtomicInteger();
+            parallelExecutor = Executors.newFixedThreadPool(parallelThreads, runnable -> {
+                final Thread thread = new Thread(runnable, "sling-junit-test-runner-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return parallelExecutor;
+    }
+
     @Override
-    public void close() {
-        // nothing to do
+    public synchronized void close() {
+        if (parallelExecutor != null) {
+            parallelExecutor.shutdownNow();
+            parallelExecutor = null;
+        }
     }
 }
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.runner.Computer;
+import org.junit.runner.Runner;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.RunnerScheduler;
+
+/** Computer that runs test classes in parallel on a bounded executor,
+ *  while the methods of each test class run sequentially.
+ *
+ *  Unlike {@link org.junit.experimental.ParallelComputer}, which uses an
+ *  unbounded thread pool per run, the executor is supplied and can be
+ *  shared by concurrent runs.
+ */
+class ParallelClassesComputer extends Computer {
+
+    private final ExecutorService executor;
+
+    ParallelClassesComputer(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public Runner getSuite(RunnerBuilder builder, Class<?>[] classes) throws InitializationError {
+        final Runner suite = super.getSuite(builder, classes);
+        if (suite instanceof ParentRunner) {
+            ((ParentRunner<?>) suite).setScheduler(new ExecutorScheduler());
+        }
+        return suite;
+    }
+
+    /** Schedules the test classes of one run and waits for them to finish */
+    private class ExecutorScheduler implements RunnerScheduler {
+
+        private final List<Future<?>> futures = new ArrayList<>();
+
+        @Override
+        public void schedule(Runnable childStatement) {
+            // called by the thread that runs the suite, which owns the test context of the run
+            final Map<String, Object> contextInput = SlingTestContextProvider.hasContext()
+                    ? SlingTestContextProvider.getContext().input()
+                    : null;
+            futures.add(executor.submit(() -> runWithTestContext(childStatement, contextInput)));
+        }
+
+        /** Provide the test context that tests expect on the executor thread */
+        private void runWithTestContext(Runnable childStatement, Map<String, Object> contextInput) {
+            if (contextInput != null) {
+                SlingTestContextProvider.createContext().input().putAll(contextInput);
+            }
+            try {
+                childStatement.run();
+            } finally {
+                if (contextInput != null) {
+                    SlingTestContextProvider.deleteContext();
+                }
+            }
+        }
+
+        @Override
+        public void finished() {
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // failures of tests are reported to the RunNotifier, this is unexpected
+                throw new IllegalStateException("Parallel test class execution failed", e.getCause());
+            }
+        }
+    }
+}
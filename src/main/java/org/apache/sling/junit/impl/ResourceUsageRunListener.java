@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Measures the CPU time and the allocated bytes of the thread
+ *  running each test, and puts them into the test context output
+ *  before the test finished event is passed on.
+ *
+ *  Also samples the garbage collection count and time and the heap
+ *  usage before and after each test and each test class. These are
+ *  JVM-wide values, so with tests running in parallel they include
+ *  the activity of the concurrent tests. The values of test classes
+ *  are passed to the optional {@link SuiteUsageReporter}.
+ *
+ *  Meant to be wrapped by the {@link TestContextRunListenerWrapper},
+ *  which provides the test context.
+ */
+@RunListener.ThreadSafe
+public class ResourceUsageRunListener extends RunListener {
+
+    /** {@link org.apache.sling.junit.TestSelector#getParameter(String)} that enables ("true")
+     *  or disables ("false") the measurement, overriding the configured default.
+     */
+    public static final String MEASURE_RESOURCE_USAGE_PARAM = "measureResourceUsage";
+
+    /** Test context output keys of the measurements */
+    public static final String CPU_TIME_NSEC = "test_cpu_time_nsec";
+
+    public static final String ALLOCATED_BYTES = "test_allocated_bytes";
+
+    public static final String GC_COUNT = "test_gc_count";
+
+    public static final String GC_TIME_MSEC = "test_gc_time_msec";
+
+    public static final String HEAP_DELTA_BYTES = "test_heap_delta_bytes";
+
+    private static final Logger log = LoggerFactory.getLogger(ResourceUsageRunListener.class);
+
+    private final RunListener wrapped;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final boolean measureCpuTime;
+
+    private final AllocatedBytes allocatedBytes = createAllocatedBytes();
+
+    private final List<GarbageCollectorMXBean> gcMXBeans = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+
+    private final SuiteUsageReporter suiteUsageReporter;
+
+    private final Map<Description, long[]> testStarts = new ConcurrentHashMap<>();
+
+    private final Map<Description, MemorySample> suiteStarts = new ConcurrentHashMap<>();
+
+    /** Receives the formatted measurements of each finished test class */
+    @FunctionalInterface
+    public interface SuiteUsageReporter {
+        void report(Description suite, String usage) throws Exception;
+    }
+
+    public ResourceUsageRunListener(RunListener toWrap) {
+        this(toWrap, null);
+    }
+
+    public ResourceUsageRunListener(RunListener toWrap, SuiteUsageReporter suiteUsageReporter) {
+        wrapped = toWrap;
+        this.suiteUsageReporter = suiteUsageReporter;
+        measureCpuTime = threadMXBean.isThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled();
+        if (!measureCpuTime) {
+            log.info("Thread CPU time is not available, not measuring the CPU time of tests");
+        }
+        if (allocatedBytes == null) {
+            log.info("Thread allocated bytes are not available, not measuring the allocations of tests");
+        }
+    }
+
+    @Override
+    public void testStarted(Description description) throws Exception {
+        final MemorySample memory = sampleMemory();
+        testStarts.put(
+                description,
+                new long[] {getCpuTime(), getAllocatedBytes(), memory.gcCount, memory.gcTimeMsec, memory.heapUsed});
+        wrapped.testStarted(description);
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        final long cpuTime = getCpuTime();
+        final long allocated = getAllocatedBytes();
+        final MemorySample memory = sampleMemory();
+        final long[] start = testStarts.remove(description);
+        if (start != null && SlingTestContextProvider.hasContext()) {
+            final Map<String, Object> output =
+                    SlingTestContextProvider.getContext().output();
+            if (cpuTime >= 0 && start[0] >= 0) {
+                output.put(CPU_TIME_NSEC, cpuTime - start[0]);
+            }
+            if (allocated >= 0 && start[1] >= 0) {
+                output.put(ALLOCATED_BYTES, allocated - start[1]);
+            }
+            output.put(GC_COUNT, memory.gcCount - start[2]);
+            output.put(GC_TIME_MSEC, memory.gcTimeMsec - start[3]);
+            output.put(HEAP_DELTA_BYTES, memory.heapUsed - start[4]);
+        }
+        wrapped.testFinished(description);
+    }
+
+    @Override
+    public void testRunStarted(Description description) throws Exception {
+        wrapped.testRunStarted(description);
+    }
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        wrapped.testRunFinished(result);
+    }
+
+    @Override
+    public void testSuiteStarted(Description description) throws Exception {
+        if (suiteUsageReporter != null && description.getTestClass() != null) {
+            suiteStarts.put(description, sampleMemory());
+        }
+        wrapped.testSuiteStarted(description);
+    }
+
+    @Override
+    public void testSuiteFinished(Description description) throws Exception {
+        final MemorySample start = suiteStarts.remove(description);
+        if (start != null) {
+            final MemorySample end = sampleMemory();
+            suiteUsageReporter.report(
+                    description,
+                    description.getClassName() + ": "
+                            + formatMemoryUsage(
+                                    end.gcCount - start.gcCount,
+                                    end.gcTimeMsec - start.gcTimeMsec,
+                                    end.heapUsed - start.heapUsed));
+        }
+        wrapped.testSuiteFinished(description);
+    }
+
+    @Override
+    public void testFailure(Failure failure) throws Exception {
+        wrapped.testFailure(failure);
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        wrapped.testAssumptionFailure(failure);
+    }
+
+    @Override
+    public void testIgnored(Description description) throws Exception {
+        wrapped.testIgnored(description);
+    }
+
+    /** @return the CPU time of the current thread in nsec, or -1 if not available */
+    private long getCpuTime() {
+        return measureCpuTime ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /** @return the bytes allocated by the current thread, or -1 if not available */
+    private long getAllocatedBytes() {
+        return allocatedBytes == null ? -1 : allocatedBytes.ofCurrentThread();
+    }
+
+    /** Sums up the collection counts and times of all garbage collectors, ignoring
+     *  undefined (negative) values, and gets the current heap usage
+     */
+    private MemorySample sampleMemory() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : gcMXBeans) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new MemorySample(count, time, memoryMXBean.getHeapMemoryUsage().getUsed());
+    }
+
+    private static String formatMemoryUsage(Object gcCount, Object gcTimeMsec, Object heapDelta) {
+        return "GC count " + gcCount + ", GC time " + gcTimeMsec + " msec, heap delta " + heapDelta + " bytes";
+    }
+
+    /** Formats the measurements of a finished test that are found in the supplied test context output
+     *  @return the formatted measurements, or null if there are none
+     */
+    public static String formatResourceUsage(Map<String, Object> output) {
+        final StringBuilder sb = new StringBuilder();
+        if (output.containsKey(CPU_TIME_NSEC)) {
+            sb.append("CPU time ").append(output.get(CPU_TIME_NSEC)).append(" nsec");
+        }
+        if (output.containsKey(ALLOCATED_BYTES)) {
+            sb.append(sb.length() > 0 ? ", " : "")
+                    .append("allocated ")
+                    .append(output.get(ALLOCATED_BYTES))
+                    .append(" bytes");
+        }
+        if (output.containsKey(GC_COUNT)) {
+            sb.append(sb.length() > 0 ? ", " : "")
+                    .append(formatMemoryUsage(
+                            output.get(GC_COUNT), output.get(GC_TIME_MSEC), output.get(HEAP_DELTA_BYTES)));
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static AllocatedBytes createAllocatedBytes() {
+        try {
+            return AllocatedBytes.create();
+        } catch (NoClassDefFoundError e) {
+            // com.sun.management is not available
+            return null;
+        }
+    }
+
+    private static class MemorySample {
+        private final long gcCount;
+
+        private final long gcTimeMsec;
+
+        private final long heapUsed;
+
+        MemorySample(long gcCount, long gcTimeMsec, long heapUsed) {
+            this.gcCount = gcCount;
+            this.gcTimeMsec = gcTimeMsec;
+            this.heapUsed = heapUsed;
+        }
+    }
+
+    /** Uses the com.sun.management extension of the ThreadMXBean, which is optional */
+    private static class AllocatedBytes {
+
+        private final com.sun.management.ThreadMXBean threadMXBean;
+
+        private AllocatedBytes(com.sun.management.ThreadMXBean threadMXBean) {
+            this.threadMXBean = threadMXBean;
+        }
+
+        static AllocatedBytes create() {
+            final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return new AllocatedBytes(sunBean);
+                }
+            }
+            return null;
+        }
+
+        long ofCurrentThread() {
+            return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/** Funnels the events of tests that run on several threads into a
+ *  RunListener that is not thread-safe, like our Renderers.
+ *
+ *  The events are delivered in the order of the test tree, no matter
+ *  which threads they come from: the events of a test suite or test are
+ *  delivered together, after the events of the suites and tests that
+ *  were started before it by the same parent suite. Events of the suite
+ *  or test whose turn it is are delivered immediately, events of others
+ *  are kept until it is their turn. The parent of a suite or test is
+ *  looked up in the Description of the test run, as supplied by
+ *  {@link #testRunStarted(Description)}.
+ *
+ *  The test context output of a finished test is captured when the test
+ *  finishes, and restored on the delivering thread while the event is
+ *  delivered.
+ */
+@RunListener.ThreadSafe
+public class SerializingRunListener extends RunListener {
+
+    private final RunListener wrapped;
+
+    /** Guards all fields below, and the delivery of events */
+    private final Object lock = new Object();
+
+    /** Parent of each Description of the test run */
+    private final Map<Description, Description> parents = new HashMap<>();
+
+    private final Node root = new Node(null, false);
+
+    /** Started nodes that are not finished yet, in start order */
+    private final List<Node> openNodes = new ArrayList<>();
+
+    /** Path from the root to the node whose events are delivered immediately */
+    private final Deque<Position> delivering = new ArrayDeque<>();
+
+    private boolean runFinished;
+
+    public SerializingRunListener(RunListener toWrap) {
+        wrapped = toWrap;
+        delivering.push(new Position(root));
+    }
+
+    @Override
+    public void testRunStarted(Description description) throws Exception {
+        synchronized (lock) {
+            if (description != null) {
+                addParents(description);
+            }
+            root.items.add((Event) listener -> listener.testRunStarted(description));
+            deliver();
+        }
+    }
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        synchronized (lock) {
+            root.items.add((Event) listener -> listener.testRunFinished(result));
+            // deliver what is left, even if some suites or tests did not report being finished
+            runFinished = true;
+            deliver();
+        }
+    }
+
+    @Override
+    public void testSuiteStarted(Description description) throws Exception {
+        start(description, false, listener -> listener.testSuiteStarted(description));
+    }
+
+    @Override
+    public void testSuiteFinished(Description description) throws Exception {
+        finish(description, false, listener -> listener.testSuiteFinished(description));
+    }
+
+    @Override
+    public void testStarted(Description description) throws Exception {
+        start(description, true, listener -> listener.testStarted(description));
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        final Map<String, Object> output = SlingTestContextProvider.hasContext()
+                ? new HashMap<>(SlingTestContextProvider.getContext().output())
+                : null;
+        finish(description, true, listener -> withContextOutput(output, () -> listener.testFinished(description)));
+    }
+
+    @Override
+    public void testFailure(Failure failure) throws Exception {
+        add(failure.getDescription(), listener -> listener.testFailure(failure));
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        try {
+            add(failure.getDescription(), listener -> listener.testAssumptionFailure(failure));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void testIgnored(Description description) throws Exception {
+        synchronized (lock) {
+            getParent(description, true).items.add((Event) listener -> listener.testIgnored(description));
+            deliver();
+        }
+    }
+
+    /** Run an action that produces additional output, like {@link org.apache.sling.junit.Renderer#info},
+     *  with the events of the supplied suite or test, which must not be finished yet.
+     */
+    public void execute(Description description, Action action) throws Exception {
+        add(description, listener -> action.run());
+    }
+
+    private void start(Description description, boolean test, Event event) throws Exception {
+        synchronized (lock) {
+            final Node node = new Node(description, test);
+            node.items.add(event);
+            getParent(description, test).items.add(node);
+            openNodes.add(node);
+            deliver();
+        }
+    }
+
+    private void finish(Description description, boolean test, Event event) throws Exception {
+        synchronized (lock) {
+            final Node node = findOpenNode(description, test);
+            if (node == null) {
+                getParent(description, test).items.add(event);
+            } else {
+                node.items.add(event);
+                node.finished = true;
+                openNodes.remove(node);
+            }
+            deliver();
+        }
+    }
+
+    /** Add an event to the open test or suite of the supplied Description */
+    private void add(Description description, Event event) throws Exception {
+        synchronized (lock) {
+            Node node = findOpenNode(description, true);
+            if (node == null) {
+                node = findOpenNode(description, false);
+            }
+            if (node == null) {
+                node = getParent(description, true);
+            }
+            node.items.add(event);
+            deliver();
+        }
+    }
+
+    /** Deliver all events up to the first suite or test that is not finished yet */
+    private void deliver() throws Exception {
+        while (!delivering.isEmpty()) {
+            final Position position = delivering.peek();
+            if (position.index < position.node.items.size()) {
+                // release delivered items, the test tree of a run can be large
+                final Object item = position.node.items.set(position.index++, null);
+                if (item instanceof Node) {
+                    delivering.push(new Position((Node) item));
+                } else {
+                    ((Event) item).deliverTo(wrapped);
+                }
+            } else if (position.node.finished || runFinished) {
+                delivering.pop();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void addParents(Description description) {
+        for (Description child : description.getChildren()) {
+            // like the invocations of a parameterized test, which are described like the test itself
+            if (!child.equals(description)) {
+                parents.putIfAbsent(child, description);
+            }
+            addParents(child);
+        }
+    }
+
+    /** Get the open suite that a started, finished or ignored suite or test belongs to */
+    private Node getParent(Description description, boolean test) {
+        if (test) {
+            // the invocations of a parameterized test or a test factory, for example
+            final Node container = findOpenNode(description, false);
+            if (container != null) {
+                return container;
+            }
+        }
+        final Description parentDescription = parents.get(description);
+        Node parent = parentDescription == null ? null : findOpenNode(parentDescription, false);
+        if (parent == null) {
+            // not part of the Description of the test run, like dynamic tests
+            parent = findOpenSuite(description.getClassName());
+        }
+        return parent == null ? root : parent;
+    }
+
+    private Node findOpenNode(Description description, boolean test) {
+        for (int i = openNodes.size() - 1; i >= 0; i--) {
+            final Node node = openNodes.get(i);
+            if (node.test == test && node.description.equals(description)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private Node findOpenSuite(String className) {
+        for (int i = openNodes.size() - 1; i >= 0; i--) {
+            final Node node = openNodes.get(i);
+            if (!node.test && className != null && className.equals(node.description.getClassName())) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /** Deliver an event with the supplied test context output */
+    private static void withContextOutput(Map<String, Object> output, Action action) throws Exception {
+        if (output == null) {
+            action.run();
+        } else if (SlingTestContextProvider.hasContext()) {
+            final Map<String, Object> current =
+                    SlingTestContextProvider.getContext().output();
+            final Map<String, Object> saved = new HashMap<>(current);
+            current.clear();
+            current.putAll(output);
+            try {
+                action.run();
+            } finally {
+                current.clear();
+                current.putAll(saved);
+            }
+        } else {
+            SlingTestContextProvider.createContext().output().putAll(output);
+            try {
+                action.run();
+            } finally {
+                SlingTestContextProvider.deleteContext();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface Event {
+        void deliverTo(RunListener listener) throws Exception;
+    }
+
+    /** A suite or test, with its events and the nodes of its children in the order they happened */
+    private static class Node {
+        private final Description description;
+
+        private final boolean test;
+
+        private final List<Object> items = new ArrayList<>();
+
+        private boolean finished;
+
+        Node(Description description, boolean test) {
+            this.description = description;
+            this.test = test;
+        }
+    }
+
+    private static class Position {
+        private final Node node;
+
+        private int index;
+
+        Position(Node node) {
+            this.node = node;
+        }
+    }
+}
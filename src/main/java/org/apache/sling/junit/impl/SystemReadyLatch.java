@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkEvent;
+import org.osgi.framework.FrameworkListener;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Waits for all non-fragment bundles to be active and for all
+ *  required services to be available, driven by framework events
+ *  so that waiting ends as soon as the last condition is met.
+ */
+class SystemReadyLatch implements BundleListener, FrameworkListener, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SystemReadyLatch.class);
+
+    private final BundleContext bundleContext;
+
+    private final Set<Bundle> bundlesToWaitFor = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> missingServices = ConcurrentHashMap.newKeySet();
+
+    private final List<ServiceTracker<Object, Object>> serviceTrackers = new ArrayList<>();
+
+    /** @param requiredServiceFilters LDAP filters of services that must be available */
+    SystemReadyLatch(@NotNull BundleContext bundleContext, @NotNull String[] requiredServiceFilters) {
+        this.bundleContext = bundleContext;
+
+        // register first, to not miss bundles that start while we look at their state
+        bundleContext.addBundleListener(this);
+        bundleContext.addFrameworkListener(this);
+        for (Bundle bundle : bundleContext.getBundles()) {
+            if (!isActive(bundle) && !isFragment(bundle)) {
+                bundlesToWaitFor.add(bundle);
+            }
+        }
+        // catch bundles whose start event arrived before they were added above
+        bundlesToWaitFor.removeIf(SystemReadyLatch::isActive);
+
+        for (String serviceFilter : requiredServiceFilters) {
+            try {
+                missingServices.add(serviceFilter);
+                final ServiceTracker<Object, Object> tracker =
+                        new ServiceTracker<Object, Object>(
+                                bundleContext, bundleContext.createFilter(serviceFilter), null) {
+                            @Override
+                            public Object addingService(ServiceReference<Object> reference) {
+                                serviceAvailable(serviceFilter);
+                                // we only care about the service's presence, not the service object
+                                return reference;
+                            }
+                        };
+                serviceTrackers.add(tracker);
+                tracker.open(true);
+            } catch (InvalidSyntaxException e) {
+                missingServices.remove(serviceFilter);
+                log.warn("Ignoring invalid required service filter '{}': {}", serviceFilter, e.getMessage());
+            }
+        }
+    }
+
+    /** Bundles that are not yet active and filters of services that are not yet available */
+    @NotNull
+    List<Object> getPendingConditions() {
+        final List<Object> pending = new ArrayList<>(bundlesToWaitFor);
+        missingServices.forEach(filter -> pending.add("service " + filter));
+        return pending;
+    }
+
+    /** Wait until all conditions are met or the deadline passed
+     *  @param deadline in milliseconds since the epoch
+     */
+    synchronized void await(long deadline) throws InterruptedException {
+        long remaining;
+        while (!isSatisfied() && (remaining = deadline - System.currentTimeMillis()) >= 0) {
+            // wait(0) would wait forever, and we want to return only once the deadline is over
+            wait(remaining + 1);
+        }
+    }
+
+    private boolean isSatisfied() {
+        return bundlesToWaitFor.isEmpty() && missingServices.isEmpty();
+    }
+
+    @Override
+    public void bundleChanged(BundleEvent event) {
+        final Bundle bundle = event.getBundle();
+        if (event.getType() == BundleEvent.UNINSTALLED || isActive(bundle)) {
+            bundlesToWaitFor.remove(bundle);
+            wakeUp();
+        }
+    }
+
+    @Override
+    public void frameworkEvent(FrameworkEvent event) {
+        // start level changes may activate bundles without us noticing an individual event
+        if (event.getType() == FrameworkEvent.STARTED || event.getType() == FrameworkEvent.STARTLEVEL_CHANGED) {
+            bundlesToWaitFor.removeIf(SystemReadyLatch::isActive);
+            wakeUp();
+        }
+    }
+
+    private void serviceAvailable(String filter) {
+        missingServices.remove(filter);
+        wakeUp();
+    }
+
+    private synchronized void wakeUp() {
+        log.debug("Startup conditions changed, still pending: {}", bundlesToWaitFor.size() + missingServices.size());
+        notifyAll();
+    }
+
+    @Override
+    public void close() {
+        bundleContext.removeBundleListener(this);
+        bundleContext.removeFrameworkListener(this);
+        serviceTrackers.forEach(ServiceTracker::close);
+    }
+
+    private static boolean isFragment(final Bundle bundle) {
+        return bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null;
+    }
+
+    private static boolean isActive(Bundle bundle) {
+        return bundle.getState() == Bundle.ACTIVE;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.osgi.framework.Bundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Persistent index of the test classes provided by bundles, keyed by
+ *  bundle id, bundle last modified timestamp and Sling-Test-Regexp header.
+ *
+ *  Allows {@link BundleTestsProvider} to skip walking the entries of
+ *  bundles that did not change since they were last scanned.
+ */
+class TestClassesIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestClassesIndex.class);
+
+    private static final String LAST_MODIFIED_SUFFIX = ".lastModified";
+
+    private static final String REGEXP_SUFFIX = ".regexp";
+
+    private static final String CLASSES_SUFFIX = ".classes";
+
+    private static final String CLASSES_SEPARATOR = ",";
+
+    /** Null if no persistent storage is available */
+    private final File file;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean dirty;
+
+    TestClassesIndex(@Nullable File file) {
+        this.file = file;
+        load();
+    }
+
+    /** Return the indexed test classes of supplied bundle, or null
+     *  if the bundle is unknown or changed since it was indexed.
+     */
+    @Nullable
+    Set<String> get(@NotNull Bundle bundle, @NotNull String testRegexp) {
+        final Entry entry = entries.get(bundle.getBundleId());
+        if (entry != null && entry.lastModified == bundle.getLastModified() && entry.testRegexp.equals(testRegexp)) {
+            hits.incrementAndGet();
+            return entry.testClasses;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(@NotNull Bundle bundle, @NotNull String testRegexp, @NotNull Set<String> testClasses) {
+        entries.put(
+                bundle.getBundleId(),
+                new Entry(bundle.getLastModified(), testRegexp, Collections.unmodifiableSet(testClasses)));
+        dirty = true;
+    }
+
+    long getHitCount() {
+        return hits.get();
+    }
+
+    long getMissCount() {
+        return misses.get();
+    }
+
+    /** Write the index to persistent storage, if it changed.
+     *  @param isInstalled used to drop entries of bundles that are no longer installed
+     */
+    synchronized void save(@NotNull LongPredicate isInstalled) {
+        if (entries.keySet().removeIf(bundleId -> !isInstalled.test(bundleId))) {
+            dirty = true;
+        }
+        if (file == null || !dirty) {
+            return;
+        }
+        final Properties props = new Properties();
+        for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+            final String prefix = String.valueOf(e.getKey());
+            final Entry entry = e.getValue();
+            props.setProperty(prefix + LAST_MODIFIED_SUFFIX, String.valueOf(entry.lastModified));
+            props.setProperty(prefix + REGEXP_SUFFIX, entry.testRegexp);
+            props.setProperty(prefix + CLASSES_SUFFIX, String.join(CLASSES_SEPARATOR, entry.testClasses));
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, "Test classes index of " + BundleTestsProvider.class.getName());
+            dirty = false;
+            LOG.debug("Test classes index with {} entries saved to {}", entries.size(), file);
+        } catch (IOException e) {
+            LOG.warn("Unable to save test classes index to {}", file, e);
+        }
+    }
+
+    private void load() {
+        if (file == null || !file.isFile()) {
+            return;
+        }
+        final Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            LOG.warn("Unable to load test classes index from {}, ignored", file, e);
+            return;
+        }
+        for (String key : props.stringPropertyNames()) {
+            if (!key.endsWith(LAST_MODIFIED_SUFFIX)) {
+                continue;
+            }
+            final String prefix = key.substring(0, key.length() - LAST_MODIFIED_SUFFIX.length());
+            try {
+                final long bundleId = Long.parseLong(prefix);
+                final long lastModified = Long.parseLong(props.getProperty(key));
+                final String testRegexp = Objects.requireNonNull(props.getProperty(prefix + REGEXP_SUFFIX));
+                final String classes = Objects.requireNonNull(props.getProperty(prefix + CLASSES_SUFFIX));
+                final Set<String> testClasses = classes.isEmpty()
+                        ? Collections.emptySet()
+                        : new LinkedHashSet<>(Arrays.asList(classes.split(CLASSES_SEPARATOR)));
+                entries.put(bundleId, new Entry(lastModified, testRegexp, Collections.unmodifiableSet(testClasses)));
+            } catch (NumberFormatException | NullPointerException e) {
+                LOG.debug("Ignoring invalid test classes index entry {}", prefix);
+            }
+        }
+        LOG.debug("Test classes index with {} entries loaded from {}", entries.size(), file);
+    }
+
+    private static class Entry {
+        private final long lastModified;
+
+        private final String testRegexp;
+
+        private final Set<String> testClasses;
+
+        private Entry(long lastModified, String testRegexp, Set<String> testClasses) {
+            this.lastModified = lastModified;
+            this.testRegexp = testRegexp;
+            this.testClasses = testClasses;
+        }
+    }
+}
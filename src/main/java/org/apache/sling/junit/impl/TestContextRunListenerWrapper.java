@@ -18,6 +18,10 @@
  */
 package org.apache.sling.junit.impl;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.sling.junit.SlingTestContextProvider;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
@@ -26,11 +30,22 @@ import org.junit.runner.notification.RunListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+@RunListener.ThreadSafe
 public class TestContextRunListenerWrapper extends RunListener {
+    /** Test context output keys of the test timings */
+    public static final String EXECUTION_TIME_MSEC = "test_execution_time_msec";
+
+    public static final String EXECUTION_TIME_USEC = "test_execution_time_usec";
+    public static final String START_OFFSET_USEC = "test_start_offset_usec";
+    public static final String THREAD_NAME = "test_thread_name";
+
     private final RunListener wrapped;
-    private long testStartTime;
+    // tests might run in parallel, see SerializingRunListener
+    private final Map<Description, TestTiming> testTimings = new ConcurrentHashMap<>();
+    private final Map<Description, Object> suiteEvents = new ConcurrentHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(TestContextRunListenerWrapper.class);
     private boolean createContext;
+    private volatile long runStartNanos = System.nanoTime();
 
     public TestContextRunListenerWrapper(RunListener toWrap) {
         wrapped = toWrap;
@@ -38,23 +53,40 @@ public class TestContextRunListenerWrapper extends RunListener {
 
     @Override
     public void testAssumptionFailure(Failure failure) {
+        setResult(failure, "assumption failed");
         wrapped.testAssumptionFailure(failure);
     }
 
     @Override
     public void testFailure(Failure failure) throws Exception {
         log.warn("JUnit test execution failed: {}", failure.toString(), failure.getException());
+        setResult(failure, "failed");
         wrapped.testFailure(failure);
     }
 
     @Override
     public void testFinished(Description description) throws Exception {
-        if (SlingTestContextProvider.hasContext()) {
-            SlingTestContextProvider.getContext()
-                    .output()
-                    .put("test_execution_time_msec", System.currentTimeMillis() - testStartTime);
+        final long endNanos = System.nanoTime();
+        final TestTiming timing = testTimings.remove(description);
+        if (timing != null && SlingTestContextProvider.hasContext()) {
+            final Map<String, Object> output =
+                    SlingTestContextProvider.getContext().output();
+            final long durationNanos = endNanos - timing.startNanos;
+            output.put(EXECUTION_TIME_MSEC, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            output.put(EXECUTION_TIME_USEC, TimeUnit.NANOSECONDS.toMicros(durationNanos));
+            output.put(START_OFFSET_USEC, TimeUnit.NANOSECONDS.toMicros(timing.startNanos - runStartNanos));
+            output.put(THREAD_NAME, timing.threadName);
+        }
+        if (timing != null) {
+            FlightRecorderEvent.TEST.commit(timing.flightRecorderEvent, description.getDisplayName(), timing.result);
+        }
+        try {
+            wrapped.testFinished(description);
+        } finally {
+            if (timing != null && timing.createdContext) {
+                SlingTestContextProvider.deleteContext();
+            }
         }
-        wrapped.testFinished(description);
     }
 
     @Override
@@ -64,6 +96,7 @@ public class TestContextRunListenerWrapper extends RunListener {
 
     @Override
     public void testRunStarted(Description description) throws Exception {
+        runStartNanos = System.nanoTime();
         // Create a test context if we don't have one yet
         createContext = !SlingTestContextProvider.hasContext();
         if (createContext) {
@@ -82,7 +115,12 @@ public class TestContextRunListenerWrapper extends RunListener {
 
     @Override
     public void testStarted(Description description) throws Exception {
-        testStartTime = System.currentTimeMillis();
+        // tests running in parallel on threads without a context get one for reporting their output
+        final boolean createdContext = !SlingTestContextProvider.hasContext();
+        if (createdContext) {
+            SlingTestContextProvider.createContext();
+        }
+        testTimings.put(description, new TestTiming(Thread.currentThread().getName(), createdContext));
         wrapped.testStarted(description);
     }
 
@@ -92,11 +130,47 @@ public class TestContextRunListenerWrapper extends RunListener {
         if (SlingTestContextProvider.hasContext()) {
             SlingTestContextProvider.getContext().output().clear();
         }
+        final Object event = FlightRecorderEvent.TEST_SUITE.begin();
+        if (event != null) {
+            suiteEvents.put(description, event);
+        }
         wrapped.testSuiteStarted(description);
     }
 
     @Override
     public void testSuiteFinished(Description description) throws Exception {
         wrapped.testSuiteFinished(description);
+        FlightRecorderEvent.TEST_SUITE.commit(suiteEvents.remove(description), description.getDisplayName());
+    }
+
+    private void setResult(Failure failure, String result) {
+        final TestTiming timing = testTimings.get(failure.getDescription());
+        if (timing != null) {
+            timing.result = result;
+        }
+    }
+
+    /** Formats the timings of a finished test that are found in the supplied test context output
+     *  @return the formatted timings, or null if there are none
+     */
+    public static String formatTimings(Map<String, Object> output) {
+        if (!output.containsKey(EXECUTION_TIME_USEC)) {
+            return null;
+        }
+        return output.get(EXECUTION_TIME_USEC) + " usec, started at +" + output.get(START_OFFSET_USEC)
+                + " usec on thread " + output.get(THREAD_NAME);
+    }
+
+    private static class TestTiming {
+        private final long startNanos = System.nanoTime();
+        private final String threadName;
+        private final boolean createdContext;
+        private final Object flightRecorderEvent = FlightRecorderEvent.TEST.begin();
+        private volatile String result = "passed";
+
+        TestTiming(String threadName, boolean createdContext) {
+            this.threadName = threadName;
+            this.createdContext = createdContext;
+        }
     }
 }
@@ -25,8 +25,21 @@ import org.junit.runner.notification.RunListener;
 
 public interface TestExecutionStrategy extends Closeable {
 
+    /** {@link TestSelector#getParameter(String)} that enables ("true") or disables ("false")
+     *  running test classes in parallel, overriding the configured default.
+     */
+    String PARALLEL_PARAM = "parallel";
+
     void execute(TestSelector selector, RunListener runListener) throws Exception;
 
+    /** Whether the supplied selector requests running test classes in parallel
+     *  @param parallelByDefault the value used if the selector does not specify it
+     */
+    static boolean isParallel(TestSelector selector, boolean parallelByDefault) {
+        final String parallel = selector == null ? null : selector.getParameter(PARALLEL_PARAM);
+        return parallel == null ? parallelByDefault : Boolean.parseBoolean(parallel);
+    }
+
     @Override
     void close();
 }
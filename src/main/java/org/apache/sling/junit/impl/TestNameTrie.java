@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+
+/** Trie of package segments over a sorted list of test names.
+ *
+ *  Resolves a test selector string, i.e. a test class or package name, to
+ *  the same tests that {@link org.apache.sling.junit.RequestParser#acceptTestName}
+ *  accepts, in time proportional to the number of segments of the selector.
+ *
+ *  All names below a node share the prefix "node path + '.'" and therefore form
+ *  a contiguous range of the sorted list, so each node only stores that range.
+ */
+class TestNameTrie {
+
+    private static final char SEPARATOR = '.';
+
+    private final List<String> sortedNames;
+
+    private final Node root = new Node();
+
+    /** @param sortedNames the test names, sorted in natural order */
+    TestNameTrie(@NotNull List<String> sortedNames) {
+        this.sortedNames = sortedNames;
+        for (int i = 0; i < sortedNames.size(); i++) {
+            add(sortedNames.get(i), i);
+        }
+    }
+
+    private void add(String name, int index) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            final int end = name.indexOf(SEPARATOR, start);
+            final String segment = end < 0 ? name.substring(start) : name.substring(start, end);
+            node = node.children.computeIfAbsent(segment, s -> new Node());
+            if (end < 0) {
+                node.exactIndex = index;
+                return;
+            }
+            if (node.from < 0) {
+                node.from = index;
+            }
+            node.to = index + 1;
+            start = end + 1;
+        }
+    }
+
+    /** Return the test named {@code selector} followed by all tests named
+     *  {@code selector + '.' + ...}, or all tests for an empty selector.
+     */
+    @NotNull
+    List<String> resolve(@NotNull String selector) {
+        if (selector.isEmpty()) {
+            return sortedNames;
+        }
+        Node node = root;
+        int start = 0;
+        while (node != null) {
+            final int end = selector.indexOf(SEPARATOR, start);
+            node = node.children.get(end < 0 ? selector.substring(start) : selector.substring(start, end));
+            if (end < 0) {
+                break;
+            }
+            start = end + 1;
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        final int subtreeSize = node.from < 0 ? 0 : node.to - node.from;
+        if (node.exactIndex < 0) {
+            return subtreeSize == 0 ? Collections.emptyList() : sortedNames.subList(node.from, node.to);
+        }
+        final List<String> result = new ArrayList<>(subtreeSize + 1);
+        result.add(sortedNames.get(node.exactIndex));
+        if (subtreeSize > 0) {
+            result.addAll(sortedNames.subList(node.from, node.to));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+
+        /** Index of the test whose name ends at this node, or -1 */
+        private int exactIndex = -1;
+
+        /** Range of the tests below this node, or -1 if there are none */
+        private int from = -1;
+
+        private int to = -1;
+    }
+}
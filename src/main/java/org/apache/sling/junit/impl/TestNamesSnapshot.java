@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.junit.TestsProvider;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/** Immutable snapshot of the test names supplied by a set of
+ *  {@link TestsProvider}s, used by {@link TestsManagerImpl} to
+ *  avoid collecting and sorting all test names on every request.
+ */
+class TestNamesSnapshot {
+
+    private final int trackingCount;
+
+    private final TestsProvider[] providers;
+
+    private final long[] providerVersions;
+
+    private final List<String> testNames;
+
+    private final Map<String, TestsProvider> testProviders;
+
+    private final TestNameTrie testNameTrie;
+
+    private TestNamesSnapshot(
+            int trackingCount,
+            TestsProvider[] providers,
+            long[] providerVersions,
+            List<String> testNames,
+            Map<String, TestsProvider> testProviders) {
+        this.trackingCount = trackingCount;
+        this.providers = providers;
+        this.providerVersions = providerVersions;
+        this.testNames = testNames;
+        this.testProviders = testProviders;
+        this.testNameTrie = new TestNameTrie(testNames);
+    }
+
+    /** Collect the test names of supplied providers.
+     *  @param trackingCount tracking count of the ServiceTracker that supplied the providers
+     */
+    @NotNull
+    static TestNamesSnapshot create(int trackingCount, @NotNull TestsProvider[] providers) {
+        final long[] providerVersions = new long[providers.length];
+        final Map<String, TestsProvider> testProviders = new HashMap<>();
+        for (int i = 0; i < providers.length; i++) {
+            // read the version before the names, so that concurrent changes cause another rebuild
+            providerVersions[i] = getVersion(providers[i]);
+            for (String testName : providers[i].getTestNames()) {
+                testProviders.putIfAbsent(testName, providers[i]);
+            }
+        }
+        final List<String> testNames = new ArrayList<>(testProviders.keySet());
+        Collections.sort(testNames);
+        return new TestNamesSnapshot(
+                trackingCount,
+                providers,
+                providerVersions,
+                Collections.unmodifiableList(testNames),
+                Collections.unmodifiableMap(testProviders));
+    }
+
+    /** True if neither the set of providers nor any provider's tests
+     *  changed since this snapshot was created. Only the {@link BundleTestsProvider}
+     *  reports changes to its tests, any other provider always causes the
+     *  snapshot to be considered stale.
+     */
+    boolean isCurrent(int currentTrackingCount) {
+        if (currentTrackingCount != trackingCount) {
+            return false;
+        }
+        for (int i = 0; i < providers.length; i++) {
+            final long version = getVersion(providers[i]);
+            if (version == -1 || version != providerVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return a version that changes with the tests of the provider, or -1 if unknown */
+    private static long getVersion(@NotNull TestsProvider provider) {
+        return provider instanceof BundleTestsProvider ? ((BundleTestsProvider) provider).getChangeCount() : -1;
+    }
+
+    /** Sorted, unmodifiable list of all test names */
+    @NotNull
+    List<String> getTestNames() {
+        return testNames;
+    }
+
+    /** Sorted, unmodifiable list of the tests selected by a test class or package name
+     *  @see TestNameTrie#resolve(String)
+     */
+    @NotNull
+    List<String> resolve(@NotNull String testSelectorString) {
+        return testNameTrie.resolve(testSelectorString);
+    }
+
+    @Nullable
+    TestsProvider getProvider(@NotNull String testName) {
+        return testProviders.get(testName);
+    }
+}
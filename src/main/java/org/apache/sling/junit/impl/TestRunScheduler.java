@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.apache.sling.junit.TestsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Limits the number of concurrent test runs, additional test runs
+ *  wait in a bounded FIFO queue and are rejected when it is full.
+ */
+class TestRunScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(TestRunScheduler.class);
+
+    private final int maxConcurrentRuns;
+
+    private final int maxQueuedRuns;
+
+    private final int retryAfterSeconds;
+
+    // all fields below are guarded by this
+
+    private final Deque<Ticket> queue = new ArrayDeque<>();
+
+    private int runningCount;
+
+    private long queuedCount;
+
+    private long rejectedCount;
+
+    private long totalWaitMsec;
+
+    private long maxWaitMsec;
+
+    /**
+     * @param maxConcurrentRuns maximum number of concurrent test runs, 0 for no limit
+     * @param maxQueuedRuns maximum number of test runs that wait for others to finish
+     * @param retryAfterSeconds suggested delay before trying again when a test run is rejected
+     */
+    TestRunScheduler(int maxConcurrentRuns, int maxQueuedRuns, int retryAfterSeconds) {
+        this.maxConcurrentRuns = maxConcurrentRuns;
+        this.maxQueuedRuns = maxQueuedRuns;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /** Admit a test run, which can start immediately or has to wait in the queue.
+     *  The returned Ticket must be released once the test run is finished or not needed anymore.
+     *  @throws TestsManager.TooManyTestRunsException if the queue is full
+     */
+    synchronized Ticket admit() {
+        final Ticket ticket = new Ticket();
+        if (queue.isEmpty() && canRun()) {
+            runningCount++;
+            ticket.running = true;
+            return ticket;
+        }
+        if (queue.size() >= maxQueuedRuns) {
+            rejectedCount++;
+            log.warn("Rejecting test run, {} test runs are running and {} are queued", runningCount, queue.size());
+            throw new TestsManager.TooManyTestRunsException(retryAfterSeconds);
+        }
+
+        queue.addLast(ticket);
+        queuedCount++;
+        log.info("Test run queued, {} test runs are running and {} are queued", runningCount, queue.size());
+        return ticket;
+    }
+
+    private boolean canRun() {
+        return maxConcurrentRuns <= 0 || runningCount < maxConcurrentRuns;
+    }
+
+    synchronized int getRunningCount() {
+        return runningCount;
+    }
+
+    synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** @return the number of test runs that had to wait in the queue */
+    synchronized long getQueuedCount() {
+        return queuedCount;
+    }
+
+    synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    synchronized long getTotalWaitMsec() {
+        return totalWaitMsec;
+    }
+
+    synchronized long getMaxWaitMsec() {
+        return maxWaitMsec;
+    }
+
+    /** An admitted test run, guarded by its TestRunScheduler */
+    class Ticket {
+
+        private final long admitted = System.currentTimeMillis();
+
+        private boolean running;
+
+        private boolean released;
+
+        /** Wait until the test run can start
+         *  @return number of msec waited in the queue
+         */
+        long await() throws InterruptedException {
+            synchronized (TestRunScheduler.this) {
+                if (released) {
+                    throw new IllegalStateException("Test run was already released");
+                }
+                if (running) {
+                    return 0;
+                }
+                while (queue.peekFirst() != this || !canRun()) {
+                    TestRunScheduler.this.wait();
+                }
+                queue.removeFirst();
+                runningCount++;
+                running = true;
+                // the next queued test run might be able to start as well
+                TestRunScheduler.this.notifyAll();
+
+                final long waitMsec = System.currentTimeMillis() - admitted;
+                totalWaitMsec += waitMsec;
+                maxWaitMsec = Math.max(maxWaitMsec, waitMsec);
+                return waitMsec;
+            }
+        }
+
+        /** Signal that the test run is finished, or leave the queue if it did not start. Can be called repeatedly. */
+        void release() {
+            synchronized (TestRunScheduler.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                if (running) {
+                    runningCount--;
+                } else {
+                    queue.remove(this);
+                }
+                TestRunScheduler.this.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+/** Counters of the test runs executed by the {@link TestsManagerImpl},
+ *  exposed as an MBean. All counters are lock-free, as tests
+ *  might run in parallel.
+ */
+class TestRunnerMetrics implements TestRunnerMetricsMBean {
+
+    /** JMX object name under which the metrics are registered */
+    static final String OBJECT_NAME = "org.apache.sling.junit:type=TestsManager,name=TestRunnerMetrics";
+
+    private final TestRunScheduler testRunScheduler;
+
+    private final LongAdder runsStarted = new LongAdder();
+
+    private final LongAdder runsCompleted = new LongAdder();
+
+    private final LongAdder runsFailed = new LongAdder();
+
+    private final LongAdder testFailures = new LongAdder();
+
+    private final LongAdder testsIgnored = new LongAdder();
+
+    private final DurationHistogram testTimes = new DurationHistogram();
+
+    private final DurationHistogram runTimes = new DurationHistogram();
+
+    private final LongAdder totalDiscoveryTimeMsec = new LongAdder();
+
+    private volatile long lastDiscoveryTimeMsec;
+
+    private volatile long startupWaitMsec;
+
+    TestRunnerMetrics(TestRunScheduler testRunScheduler) {
+        this.testRunScheduler = testRunScheduler;
+    }
+
+    void runStarted() {
+        runsStarted.increment();
+    }
+
+    /** @param completed false if the test run failed with an exception */
+    void runFinished(long durationNanos, boolean completed) {
+        if (completed) {
+            runsCompleted.increment();
+        } else {
+            runsFailed.increment();
+        }
+        runTimes.record(TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    void discoveryFinished(long durationNanos) {
+        final long msec = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        totalDiscoveryTimeMsec.add(msec);
+        lastDiscoveryTimeMsec = msec;
+    }
+
+    void startupWaitFinished(long msec) {
+        startupWaitMsec = msec;
+    }
+
+    /** Return a RunListener that counts the tests and their durations and passes all events on.
+     *  It must be wrapped by the {@link TestContextRunListenerWrapper}, which measures the durations.
+     */
+    RunListener wrap(RunListener toWrap) {
+        return new MetricsRunListener(toWrap);
+    }
+
+    @Override
+    public long getRunsStarted() {
+        return runsStarted.sum();
+    }
+
+    @Override
+    public long getRunsCompleted() {
+        return runsCompleted.sum();
+    }
+
+    @Override
+    public long getRunsFailed() {
+        return runsFailed.sum();
+    }
+
+    @Override
+    public int getActiveRuns() {
+        return testRunScheduler.getRunningCount();
+    }
+
+    @Override
+    public int getQueuedRuns() {
+        return testRunScheduler.getQueueDepth();
+    }
+
+    @Override
+    public long getRejectedRuns() {
+        return testRunScheduler.getRejectedCount();
+    }
+
+    @Override
+    public long getTestsExecuted() {
+        return testTimes.getCount();
+    }
+
+    @Override
+    public long getTestFailures() {
+        return testFailures.sum();
+    }
+
+    @Override
+    public long getTestsIgnored() {
+        return testsIgnored.sum();
+    }
+
+    @Override
+    public long getTotalTestTimeMsec() {
+        return testTimes.getTotal();
+    }
+
+    @Override
+    public double getMeanTestTimeMsec() {
+        return testTimes.getMean();
+    }
+
+    @Override
+    public long getTestTimeP50Msec() {
+        return testTimes.getPercentile(0.5);
+    }
+
+    @Override
+    public long getTestTimeP90Msec() {
+        return testTimes.getPercentile(0.9);
+    }
+
+    @Override
+    public long getTestTimeP99Msec() {
+        return testTimes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxTestTimeMsec() {
+        return testTimes.getMax();
+    }
+
+    @Override
+    public long getTotalRunTimeMsec() {
+        return runTimes.getTotal();
+    }
+
+    @Override
+    public long getRunTimeP50Msec() {
+        return runTimes.getPercentile(0.5);
+    }
+
+    @Override
+    public long getRunTimeP90Msec() {
+        return runTimes.getPercentile(0.9);
+    }
+
+    @Override
+    public long getRunTimeP99Msec() {
+        return runTimes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxRunTimeMsec() {
+        return runTimes.getMax();
+    }
+
+    @Override
+    public long getTotalDiscoveryTimeMsec() {
+        return totalDiscoveryTimeMsec.sum();
+    }
+
+    @Override
+    public long getLastDiscoveryTimeMsec() {
+        return lastDiscoveryTimeMsec;
+    }
+
+    @Override
+    public long getStartupWaitMsec() {
+        return startupWaitMsec;
+    }
+
+    /** Counts durations in buckets of increasing size, which is precise
+     *  enough for percentiles of test durations and needs no locking.
+     */
+    static class DurationHistogram {
+
+        private static final long[] BUCKET_LIMITS_MSEC = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000, 300000, 600000
+        };
+
+        // the last bucket counts the durations above the highest limit
+        private final LongAdder[] buckets = new LongAdder[BUCKET_LIMITS_MSEC.length + 1];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder total = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+        DurationHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long msec) {
+            int i = 0;
+            while (i < BUCKET_LIMITS_MSEC.length && msec > BUCKET_LIMITS_MSEC[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            count.increment();
+            total.add(msec);
+            max.accumulate(msec);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotal() {
+            return total.sum();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        double getMean() {
+            final long n = count.sum();
+            return n == 0 ? 0 : (double) total.sum() / n;
+        }
+
+        /** @return the upper limit of the bucket that contains the percentile, capped by the maximum
+         *  value recorded, or 0 if nothing was recorded
+         */
+        long getPercentile(double percentile) {
+            final long[] counts = new long[buckets.length];
+            long n = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                counts[i] = buckets[i].sum();
+                n += counts[i];
+            }
+            if (n == 0) {
+                return 0;
+            }
+            final long rank = (long) Math.ceil(percentile * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_LIMITS_MSEC.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_LIMITS_MSEC[i], getMax());
+                }
+            }
+            return getMax();
+        }
+    }
+
+    @RunListener.ThreadSafe
+    private class MetricsRunListener extends RunListener {
+
+        private final RunListener wrapped;
+
+        MetricsRunListener(RunListener toWrap) {
+            wrapped = toWrap;
+        }
+
+        @Override
+        public void testRunStarted(Description description) throws Exception {
+            wrapped.testRunStarted(description);
+        }
+
+        @Override
+        public void testRunFinished(Result result) throws Exception {
+            wrapped.testRunFinished(result);
+        }
+
+        @Override
+        public void testSuiteStarted(Description description) throws Exception {
+            wrapped.testSuiteStarted(description);
+        }
+
+        @Override
+        public void testSuiteFinished(Description description) throws Exception {
+            wrapped.testSuiteFinished(description);
+        }
+
+        @Override
+        public void testStarted(Description description) throws Exception {
+            wrapped.testStarted(description);
+        }
+
+        @Override
+        public void testFinished(Description description) throws Exception {
+            if (SlingTestContextProvider.hasContext()) {
+                final Object msec = SlingTestContextProvider.getContext()
+                        .output()
+                        .get(TestContextRunListenerWrapper.EXECUTION_TIME_MSEC);
+                if (msec instanceof Long) {
+                    testTimes.record((Long) msec);
+                }
+            }
+            wrapped.testFinished(description);
+        }
+
+        @Override
+        public void testFailure(Failure failure) throws Exception {
+            testFailures.increment();
+            wrapped.testFailure(failure);
+        }
+
+        @Override
+        public void testAssumptionFailure(Failure failure) {
+            wrapped.testAssumptionFailure(failure);
+        }
+
+        @Override
+        public void testIgnored(Description description) throws Exception {
+            testsIgnored.increment();
+            wrapped.testIgnored(description);
+        }
+    }
+}
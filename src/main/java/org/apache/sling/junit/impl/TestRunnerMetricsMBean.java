@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+/** JMX view of the {@link TestRunnerMetrics}. Durations are in msec,
+ *  percentiles are approximated by the upper bound of a histogram bucket.
+ */
+public interface TestRunnerMetricsMBean {
+
+    long getRunsStarted();
+
+    long getRunsCompleted();
+
+    long getRunsFailed();
+
+    int getActiveRuns();
+
+    int getQueuedRuns();
+
+    long getRejectedRuns();
+
+    long getTestsExecuted();
+
+    long getTestFailures();
+
+    long getTestsIgnored();
+
+    long getTotalTestTimeMsec();
+
+    double getMeanTestTimeMsec();
+
+    long getTestTimeP50Msec();
+
+    long getTestTimeP90Msec();
+
+    long getTestTimeP99Msec();
+
+    long getMaxTestTimeMsec();
+
+    long getTotalRunTimeMsec();
+
+    long getRunTimeP50Msec();
+
+    long getRunTimeP90Msec();
+
+    long getRunTimeP99Msec();
+
+    long getMaxRunTimeMsec();
+
+    long getTotalDiscoveryTimeMsec();
+
+    long getLastDiscoveryTimeMsec();
+
+    long getStartupWaitMsec();
+}
@@ -18,28 +18,35 @@
  */
 package org.apache.sling.junit.impl;
 
+import javax.management.DynamicMBean;
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.apache.sling.junit.Renderer;
 import org.apache.sling.junit.RequestParser;
+import org.apache.sling.junit.TestRun;
 import org.apache.sling.junit.TestSelector;
 import org.apache.sling.junit.TestsManager;
 import org.apache.sling.junit.TestsProvider;
 import org.apache.sling.junit.impl.servlet.junit5.JUnit5TestExecutionStrategy;
+import org.apache.sling.junit.jupiter.osgi.impl.ServiceResolutionEvents;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.osgi.framework.Bundle;
+import org.junit.runner.notification.RunListener;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
@@ -57,8 +64,54 @@ public class TestsManagerImpl implements TestsManager {
 
     private final int startupTimeoutSeconds = Integer.parseInt(System.getProperty(PROP_STARTUP_TIMEOUT_SECONDS, "40"));
 
+    public @interface Config {
+        /** LDAP filters of services that must be available before running tests,
+         *  in addition to all bundles being active.
+         */
+        String[] startup_required_services() default {};
+
+        /** Run test classes in parallel by default, can be overridden per
+         *  request with the {@value TestExecutionStrategy#PARALLEL_PARAM} parameter.
+         */
+        boolean parallel() default false;
+
+        /** Maximum number of test classes that run in parallel, 0 for the default of the test execution strategy */
+        int parallel_threads() default 0;
+
+        /** JUnit Platform launcher configuration parameters in the form key=value,
+         *  like junit.jupiter.execution.parallel.mode.default=concurrent
+         */
+        String[] junit_platform_configuration() default {};
+
+        /** Measure the CPU time, allocated bytes and garbage collection activity of each test and test
+         *  class by default, can be overridden per request with the
+         *  {@value ResourceUsageRunListener#MEASURE_RESOURCE_USAGE_PARAM} parameter.
+         */
+        boolean measure_resource_usage() default false;
+
+        /** Maximum number of test runs that execute concurrently, 0 for no limit */
+        int max_concurrent_runs() default 0;
+
+        /** Maximum number of test runs that wait for others to finish, further test runs are rejected.
+         *  Applies to the test runs that wait for being started and to the asynchronous test runs
+         *  that wait for being executed, separately.
+         */
+        int max_queued_runs() default 10;
+
+        /** Delay in seconds suggested to clients whose test run was rejected */
+        int rejected_run_retry_after_seconds() default 60;
+
+        /** Maximum number of done asynchronous test runs to keep for retrieving their results */
+        int async_runs_max_done() default 20;
+
+        /** Maximum time in seconds to keep the results of a done asynchronous test run */
+        int async_runs_max_age_seconds() default 3600;
+    }
+
     private volatile boolean waitForSystemStartup = true;
 
+    private String[] startupRequiredServices;
+
     boolean isReady() {
         return !waitForSystemStartup;
     }
@@ -67,27 +120,109 @@ public class TestsManagerImpl implements TestsManager {
 
     private ServiceTracker<TestsProvider, TestsProvider> testsProviderTracker;
 
+    private volatile TestNamesSnapshot testNamesSnapshot;
+
     private TestExecutionStrategy executionStrategy;
 
+    private AsyncTestRuns asyncTestRuns;
+
+    private TestRunScheduler testRunScheduler;
+
+    private boolean measureResourceUsage;
+
+    private TestRunnerMetrics metrics;
+
+    private ServiceRegistration<DynamicMBean> metricsRegistration;
+
     @Activate
-    protected void activate(BundleContext ctx) {
+    protected void activate(BundleContext ctx, Config config) {
         bundleContext = ctx;
+        startupRequiredServices = config.startup_required_services();
         testsProviderTracker = new ServiceTracker<>(bundleContext, TestsProvider.class, null);
         testsProviderTracker.open();
+        measureResourceUsage = config.measure_resource_usage();
+        testRunScheduler = new TestRunScheduler(
+                config.max_concurrent_runs(), config.max_queued_runs(), config.rejected_run_retry_after_seconds());
+        metrics = new TestRunnerMetrics(testRunScheduler);
+        metricsRegistration = registerMetrics(ctx, metrics);
+        // the Jupiter service parameters are resolved outside of this package, record them through its hook
+        ServiceResolutionEvents.setRecorder(new ServiceResolutionEvents.Recorder() {
+            @Override
+            public Object begin() {
+                return FlightRecorderEvent.SERVICE_RESOLUTION.begin();
+            }
+
+            @Override
+            public void commit(@NotNull Object event, @NotNull String serviceType, @Nullable String filter) {
+                FlightRecorderEvent.SERVICE_RESOLUTION.commit(event, serviceType, filter);
+            }
+        });
+        asyncTestRuns = new AsyncTestRuns(
+                config.async_runs_max_done(),
+                TimeUnit.SECONDS.toMillis(config.async_runs_max_age_seconds()),
+                config.max_queued_runs(),
+                config.rejected_run_retry_after_seconds());
         if (JUnit5TestExecutionStrategy.canLoadRequiredClasses()) {
-            executionStrategy = new JUnit5TestExecutionStrategy(this, ctx);
+            executionStrategy = new JUnit5TestExecutionStrategy(
+                    this,
+                    ctx,
+                    config.parallel(),
+                    config.parallel_threads(),
+                    parseConfigurationParameters(config.junit_platform_configuration()));
         } else {
             // (some) optional imports to org.junit.platform.* (JUnit5 API) are missing
-            executionStrategy = new JUnit4TestExecutionStrategy(this);
+            executionStrategy = new JUnit4TestExecutionStrategy(this, config.parallel(), config.parallel_threads());
+        }
+    }
+
+    /** Register the metrics as an MBean, using the JMX whiteboard */
+    private static ServiceRegistration<DynamicMBean> registerMetrics(BundleContext ctx, TestRunnerMetrics metrics) {
+        try {
+            final Dictionary<String, Object> props = new Hashtable<>();
+            props.put("jmx.objectname", TestRunnerMetrics.OBJECT_NAME);
+            return ctx.registerService(
+                    DynamicMBean.class, new StandardMBean(metrics, TestRunnerMetricsMBean.class), props);
+        } catch (NotCompliantMBeanException e) {
+            log.warn("Unable to register the test runner metrics MBean", e);
+            return null;
         }
     }
 
+    /** Parse configuration parameters in the form key=value */
+    static Map<String, String> parseConfigurationParameters(String[] keyValues) {
+        final Map<String, String> parameters = new HashMap<>();
+        for (String keyValue : keyValues) {
+            final int pos = keyValue.indexOf('=');
+            if (pos <= 0) {
+                log.warn("Ignoring invalid JUnit Platform configuration parameter '{}', expected key=value", keyValue);
+            } else {
+                parameters.put(
+                        keyValue.substring(0, pos).trim(),
+                        keyValue.substring(pos + 1).trim());
+            }
+        }
+        return parameters;
+    }
+
     @Deactivate
     protected void deactivate() {
+        ServiceResolutionEvents.setRecorder(null);
+
+        if (metricsRegistration != null) {
+            metricsRegistration.unregister();
+            metricsRegistration = null;
+        }
+
         if (testsProviderTracker != null) {
             testsProviderTracker.close();
             testsProviderTracker = null;
         }
+        testNamesSnapshot = null;
+
+        if (asyncTestRuns != null) {
+            asyncTestRuns.close();
+            asyncTestRuns = null;
+        }
 
         if (executionStrategy != null) {
             executionStrategy.close();
@@ -99,10 +234,10 @@ public class TestsManagerImpl implements TestsManager {
 
     @NotNull
     public Class<?> getTestClass(@NotNull String testName) throws ClassNotFoundException {
-        final TestsProvider provider = getTestProviders()
-                .filter(p -> p.getTestNames().contains(testName))
-                .findFirst()
-                .orElseThrow(() -> new ClassNotFoundException("No TestsProvider found for test '" + testName + "'"));
+        final TestsProvider provider = getTestNamesSnapshot().getProvider(testName);
+        if (provider == null) {
+            throw new ClassNotFoundException("No TestsProvider found for test '" + testName + "'");
+        }
 
         log.debug("Using provider {} to create test class {}", provider, testName);
         return provider.createTestClass(testName);
@@ -110,23 +245,50 @@ public class TestsManagerImpl implements TestsManager {
 
     @Override
     public Collection<String> getTestNames(@Nullable TestSelector selector) {
-        final List<String> tests = getTestProviders()
-                .map(TestsProvider::getTestNames)
-                .flatMap(Collection::stream)
-                .sorted()
-                .collect(Collectors.toList());
-        final int allTestsCount = tests.size();
+        final TestNamesSnapshot snapshot = getTestNamesSnapshot();
+        final List<String> allTests = snapshot.getTestNames();
         if (selector == null) {
-            log.debug("No TestSelector supplied, returning all {} tests", allTestsCount);
-        } else {
-            tests.removeIf(testName -> !selector.acceptTestName(testName));
-            log.debug("{} selected {} tests out of {}", selector, tests.size(), allTestsCount);
+            log.debug("No TestSelector supplied, returning all {} tests", allTests.size());
+            return allTests;
         }
+        if (selector.getClass() == RequestParser.class) {
+            // RequestParser selects by test class or package name, which the snapshot resolves directly
+            final List<String> tests = snapshot.resolve(selector.getTestSelectorString());
+            log.debug("{} selected {} tests out of {}", selector, tests.size(), allTests.size());
+            return tests;
+        }
+        final List<String> tests =
+                allTests.stream().filter(selector::acceptTestName).collect(Collectors.toList());
+        log.debug("{} selected {} tests out of {}", selector, tests.size(), allTests.size());
         return tests;
     }
 
-    private Stream<TestsProvider> getTestProviders() {
-        return testsProviderTracker.getTracked().values().stream();
+    @NotNull
+    @Override
+    public Collection<String> resolveTestNames(@NotNull String testSelectorString) {
+        return getTestNamesSnapshot().resolve(testSelectorString);
+    }
+
+    /** Return the current test names snapshot, rebuilding it if
+     *  the tracked TestsProviders or their tests changed.
+     */
+    @NotNull
+    private TestNamesSnapshot getTestNamesSnapshot() {
+        TestNamesSnapshot snapshot = testNamesSnapshot;
+        if (snapshot == null || !snapshot.isCurrent(testsProviderTracker.getTrackingCount())) {
+            synchronized (this) {
+                snapshot = testNamesSnapshot;
+                final int trackingCount = testsProviderTracker.getTrackingCount();
+                if (snapshot == null || !snapshot.isCurrent(trackingCount)) {
+                    log.debug("Rebuilding test names snapshot");
+                    snapshot = TestNamesSnapshot.create(
+                            trackingCount,
+                            testsProviderTracker.getTracked().values().toArray(new TestsProvider[0]));
+                    testNamesSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
     }
 
     @Override
@@ -147,11 +309,104 @@ public class TestsManagerImpl implements TestsManager {
         }
     }
 
+    @NotNull
+    @Override
+    public ReservedTestRun reserveTestRun(@Nullable TestSelector selector) {
+        if (getTestNames(selector).isEmpty()) {
+            throw new NoTestCasesFoundException();
+        }
+        final TestRunScheduler.Ticket ticket = testRunScheduler.admit();
+        return new ReservedTestRun() {
+            @Override
+            public void execute(@NotNull Renderer renderer) throws Exception {
+                executeTests(renderer, selector, ticket);
+            }
+
+            @Override
+            public void close() {
+                ticket.release();
+            }
+        };
+    }
+
     @Override
     public void executeTests(@NotNull Renderer renderer, @Nullable TestSelector selector) throws Exception {
-        renderer.title(2, "Running tests");
-        waitForSystemStartup();
-        executionStrategy.execute(selector, new TestContextRunListenerWrapper(renderer.getRunListener()));
+        executeTests(renderer, selector, testRunScheduler.admit());
+    }
+
+    /** Execute tests once the admitted test run can start, and release its ticket */
+    private void executeTests(Renderer renderer, TestSelector selector, TestRunScheduler.Ticket ticket)
+            throws Exception {
+        final long queueWaitMsec;
+        try {
+            queueWaitMsec = ticket.await();
+        } catch (InterruptedException | RuntimeException e) {
+            ticket.release();
+            throw e;
+        }
+        final long runStart = System.nanoTime();
+        final Object runEvent = FlightRecorderEvent.TEST_RUN.begin();
+        boolean completed = false;
+        metrics.runStarted();
+        try {
+            renderer.title(2, "Running tests");
+            if (queueWaitMsec > 0) {
+                renderer.info("runQueueWait", "Waited " + queueWaitMsec + " msec for other test runs to finish");
+            }
+            final long startupWaitMsec = waitForSystemStartup();
+            if (startupWaitMsec >= 0) {
+                metrics.startupWaitFinished(startupWaitMsec);
+                renderer.info("startupWait", "Waited " + startupWaitMsec + " msec for system startup");
+            }
+            final SerializingRunListener serializingListener = new SerializingRunListener(renderer.getRunListener());
+            RunListener runListener = serializingListener;
+            if (isMeasureResourceUsage(selector)) {
+                runListener = new ResourceUsageRunListener(
+                        serializingListener,
+                        (suite, usage) ->
+                                serializingListener.execute(suite, () -> renderer.info("resourceUsage", usage)));
+            }
+            executionStrategy.execute(selector, new TestContextRunListenerWrapper(metrics.wrap(runListener)));
+            completed = true;
+        } finally {
+            metrics.runFinished(System.nanoTime() - runStart, completed);
+            FlightRecorderEvent.TEST_RUN.commit(runEvent, getSelectorString(selector));
+            ticket.release();
+            log.debug("Test run finished, run queue: {}", getRunQueueStatistics());
+        }
+    }
+
+    private boolean isMeasureResourceUsage(TestSelector selector) {
+        final String measure =
+                selector == null ? null : selector.getParameter(ResourceUsageRunListener.MEASURE_RESOURCE_USAGE_PARAM);
+        return measure == null ? measureResourceUsage : Boolean.parseBoolean(measure);
+    }
+
+    /** Return statistics of the test run queue */
+    String getRunQueueStatistics() {
+        return String.format(
+                "running=%d, queued=%d, totalQueued=%d, rejected=%d, totalWaitMsec=%d, maxWaitMsec=%d",
+                testRunScheduler.getRunningCount(),
+                testRunScheduler.getQueueDepth(),
+                testRunScheduler.getQueuedCount(),
+                testRunScheduler.getRejectedCount(),
+                testRunScheduler.getTotalWaitMsec(),
+                testRunScheduler.getMaxWaitMsec());
+    }
+
+    @NotNull
+    @Override
+    public String submitTests(@Nullable TestSelector selector) {
+        if (getTestNames(selector).isEmpty()) {
+            throw new NoTestCasesFoundException();
+        }
+        return asyncTestRuns.submit(this, selector);
+    }
+
+    @Nullable
+    @Override
+    public TestRun getTestRun(@NotNull String id) {
+        return asyncTestRuns.get(id);
     }
 
     public <T> T createTestRequest(
@@ -159,6 +414,27 @@ public class TestsManagerImpl implements TestsManager {
             BiFunction<Class<?>, String, T> methodRequestFactory,
             Function<Class<?>[], T> classesRequestFactory)
             throws ClassNotFoundException {
+        final long start = System.nanoTime();
+        final Object discoveryEvent = FlightRecorderEvent.DISCOVERY.begin();
+        try {
+            return createTestRequestInternal(selector, methodRequestFactory, classesRequestFactory);
+        } finally {
+            if (metrics != null) {
+                metrics.discoveryFinished(System.nanoTime() - start);
+            }
+            FlightRecorderEvent.DISCOVERY.commit(discoveryEvent, getSelectorString(selector));
+        }
+    }
+
+    private static String getSelectorString(TestSelector selector) {
+        return selector == null ? null : selector.getTestSelectorString();
+    }
+
+    private <T> T createTestRequestInternal(
+            TestSelector selector,
+            BiFunction<Class<?>, String, T> methodRequestFactory,
+            Function<Class<?>[], T> classesRequestFactory)
+            throws ClassNotFoundException {
         final T request;
         final Collection<String> testNames = getTestNames(selector);
         if (testNames.isEmpty()) {
@@ -194,66 +470,61 @@ public class TestsManagerImpl implements TestsManager {
                 + " as a suffix to this URL"
                 + ", followed by the appropriate extension, like 'com.example.foo.tests.html'";
         renderer.info("note", note);
+        renderer.info("runQueue", "Test run queue: " + getRunQueueStatistics());
         renderer.list("testNames", testNames);
     }
 
     @Override
     public void clearCaches() {
-        // deprecated method kept for backwards compatibility
+        // deprecated method kept for backwards compatibility, the snapshot
+        // is rebuilt automatically but dropping it does no harm
+        testNamesSnapshot = null;
     }
 
-    /** Wait for all bundles to be started
-     *  @return number of msec taken by this method to execute
+    /** Wait for all bundles to be started and all required services to be available
+     *  @return number of msec taken by this method to execute, or -1 if it did not wait
      */
     long waitForSystemStartup() {
         long elapsedMsec = -1;
         if (waitForSystemStartup) {
             waitForSystemStartup = false;
-            final Set<Bundle> bundlesToWaitFor = Stream.of(bundleContext.getBundles())
-                    .filter(not(TestsManagerImpl::isActive).and(not(TestsManagerImpl::isFragment)))
-                    .collect(Collectors.toSet());
 
-            // wait max inactivityTimeout after the last bundle became active before giving up
+            // wait max startupTimeoutSeconds for all conditions to be met before giving up
             final long startTime = System.currentTimeMillis();
+            final Object startupWaitEvent = FlightRecorderEvent.STARTUP_WAIT.begin();
             final long startupTimeout = startTime + TimeUnit.SECONDS.toMillis(startupTimeoutSeconds);
-            while (needToWait(startupTimeout, bundlesToWaitFor)) {
-                log.info("Waiting for bundles to start: {}", bundlesToWaitFor);
-                try {
-                    TimeUnit.SECONDS.sleep(1);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+            try (SystemReadyLatch latch = new SystemReadyLatch(bundleContext, startupRequiredServices)) {
+                if (needToWait(startupTimeout, latch.getPendingConditions())) {
+                    log.info(
+                            "Waiting for bundles to start and services to be available: {}",
+                            latch.getPendingConditions());
+                    try {
+                        latch.await(startupTimeout);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
                 }
-                bundlesToWaitFor.removeIf(TestsManagerImpl::isActive);
-            }
 
-            elapsedMsec = System.currentTimeMillis() - startTime;
-
-            if (!bundlesToWaitFor.isEmpty()) {
-                log.warn(
-                        "Waited {} milliseconds but the following bundles are not yet started: {}",
-                        elapsedMsec,
-                        bundlesToWaitFor);
-            } else {
-                log.info("All bundles are active, starting to run tests.");
+                elapsedMsec = System.currentTimeMillis() - startTime;
+
+                final Collection<Object> pending = latch.getPendingConditions();
+                FlightRecorderEvent.STARTUP_WAIT.commit(startupWaitEvent, pending);
+                if (!pending.isEmpty()) {
+                    log.warn(
+                            "Waited {} milliseconds but the following bundles are not yet started"
+                                    + " or services not yet available: {}",
+                            elapsedMsec,
+                            pending);
+                } else {
+                    log.info("All bundles are active, starting to run tests.");
+                }
             }
         }
 
         return elapsedMsec;
     }
 
-    static boolean needToWait(final long startupTimeout, final Collection<Bundle> bundlesToWaitFor) {
-        return startupTimeout > System.currentTimeMillis() && !bundlesToWaitFor.isEmpty();
-    }
-
-    private static <T> Predicate<T> not(Predicate<T> predicate) {
-        return predicate.negate();
-    }
-
-    private static boolean isFragment(final Bundle bundle) {
-        return bundle.getHeaders().get(Constants.FRAGMENT_HOST) != null;
-    }
-
-    private static boolean isActive(Bundle bundle) {
-        return bundle.getState() == Bundle.ACTIVE;
+    static boolean needToWait(final long startupTimeout, final Collection<?> pendingConditions) {
+        return startupTimeout > System.currentTimeMillis() && !pendingConditions.isEmpty();
     }
 }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.cache;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.NotNull;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+/**
+ * Bounded, thread-safe cache of reflection metadata of test classes, like resolved type
+ * arguments, that is computed again and again for each test method and parameter otherwise.
+ * <br>
+ * Entries are dropped when the least recently used ones exceed the maximum size, or when
+ * the bundle of their test class is uninstalled or refreshed, see {@link #invalidateAll(Bundle)}.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ClassMetadataCache<K, V> {
+
+    private static final List<ClassMetadataCache<?, ?>> CACHES = new CopyOnWriteArrayList<>();
+
+    private final Function<K, Class<?>> classOfKey;
+
+    // guarded by this
+    private final Map<K, V> entries;
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param classOfKey provides the test class that a key belongs to
+     */
+    public ClassMetadataCache(int maxSize, @NotNull Function<K, Class<?>> classOfKey) {
+        this.classOfKey = classOfKey;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+        CACHES.add(this);
+    }
+
+    /**
+     * Return the cached value of the key, computing it if needed. Exceptions thrown by
+     * the computation are passed on and nothing is cached.
+     */
+    public V get(@NotNull K key, @NotNull Function<K, V> compute) {
+        synchronized (this) {
+            final V value = entries.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        // computed outside the lock, concurrent computations of the same key yield equal values
+        final V value = compute.apply(key);
+        synchronized (this) {
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized void invalidate(@NotNull Bundle bundle) {
+        entries.keySet().removeIf(key -> bundle.equals(FrameworkUtil.getBundle(classOfKey.apply(key))));
+    }
+
+    /**
+     * Drop the entries of all caches that belong to test classes of the supplied bundle.
+     */
+    public static void invalidateAll(@NotNull Bundle bundle) {
+        for (ClassMetadataCache<?, ?> cache : CACHES) {
+            cache.invalidate(bundle);
+        }
+    }
+}
@@ -23,10 +23,14 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.Map;
 
 import org.apache.sling.junit.Renderer;
 import org.apache.sling.junit.RendererFactory;
+import org.apache.sling.junit.SlingTestContextProvider;
 import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.impl.ResourceUsageRunListener;
+import org.apache.sling.junit.impl.TestContextRunListenerWrapper;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
@@ -165,6 +169,12 @@ public class HtmlRenderer extends RunListener implements Renderer, RendererFacto
         super.testFinished(description);
         output.print("<p class='finished'>Test finished: ");
         HtmlFilter.escape(output, description.toString());
+        final String timings = getTimings();
+        if (timings != null) {
+            output.print(" <span class='timings'>(");
+            HtmlFilter.escape(output, timings);
+            output.print(")</span>");
+        }
         output.println("</p></div>");
     }
 
@@ -176,6 +186,19 @@ public class HtmlRenderer extends RunListener implements Renderer, RendererFacto
         output.println("</b></p>");
     }
 
+    private static String getTimings() {
+        if (!SlingTestContextProvider.hasContext()) {
+            return null;
+        }
+        final Map<String, Object> output = SlingTestContextProvider.getContext().output();
+        final String timings = TestContextRunListenerWrapper.formatTimings(output);
+        final String resourceUsage = ResourceUsageRunListener.formatResourceUsage(output);
+        if (timings == null || resourceUsage == null) {
+            return timings == null ? resourceUsage : timings;
+        }
+        return timings + ", " + resourceUsage;
+    }
+
     private void counter(String name, String cssName, int value) {
         final String cssClass = cssName + (value > 0 ? "NonZero" : "Zero");
         output.print("<span class='");
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.junit.impl.servlet;
 
+import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -25,20 +26,24 @@ import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.util.Dictionary;
+import java.util.Hashtable;
 
 import org.apache.sling.junit.RendererSelector;
 import org.apache.sling.junit.TestsManager;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
-import org.osgi.service.http.HttpService;
-import org.osgi.service.http.NamespaceException;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Simple test runner servlet */
+/** Simple test runner servlet, registered with the HTTP Whiteboard
+ *  with async support, so that tests can be executed without blocking
+ *  a container thread.
+ */
 @SuppressWarnings("serial")
 @Component(
         immediate = true,
@@ -49,28 +54,34 @@ public class JUnitServlet extends HttpServlet {
 
     public static final String SERVLET_PATH_NAME = "servlet.path";
 
-    /** Non-null if we are registered with HttpService */
+    /** Non-null if we are registered with the HTTP Whiteboard */
     private String servletPath;
 
     @Reference
     private TestsManager testsManager;
 
-    @Reference
-    private HttpService httpService;
-
     @Reference
     private RendererSelector rendererSelector;
 
     private volatile ServletProcessor processor;
 
+    private ServiceRegistration<Servlet> servletRegistration;
+
     @Activate
-    protected void activate(final ComponentContext ctx) throws ServletException, NamespaceException {
+    protected void activate(final ComponentContext ctx) {
         servletPath = getServletPath(ctx);
         if (servletPath == null) {
-            log.info("Servlet path is null, not registering with HttpService");
+            log.info("Servlet path is null, not registering with the HTTP Whiteboard");
         } else {
-            httpService.registerServlet(servletPath, this, null, null);
-            this.processor = new ServletProcessor(testsManager, rendererSelector);
+            // registered async supported, tests of POST requests run on the processor's threads
+            this.processor = new ServletProcessor(
+                    testsManager, rendererSelector, Runtime.getRuntime().availableProcessors());
+            final Dictionary<String, Object> props = new Hashtable<>();
+            props.put(
+                    HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN,
+                    new String[] {servletPath, servletPath + "/*"});
+            props.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED, Boolean.TRUE);
+            servletRegistration = ctx.getBundleContext().registerService(Servlet.class, this, props);
             log.info("Servlet registered at {}", servletPath);
         }
     }
@@ -89,11 +100,15 @@ public class JUnitServlet extends HttpServlet {
 
     @Deactivate
     protected void deactivate(ComponentContext ctx) {
-        if (servletPath != null) {
-            httpService.unregister(servletPath);
+        if (servletRegistration != null) {
+            servletRegistration.unregister();
+            servletRegistration = null;
             log.info("Servlet unregistered from path {}", servletPath);
         }
         servletPath = null;
+        if (this.processor != null) {
+            this.processor.close();
+        }
         this.processor = null;
     }
 
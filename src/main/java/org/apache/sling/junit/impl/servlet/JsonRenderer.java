@@ -149,6 +149,8 @@ public class JsonRenderer extends RunListener implements Renderer, RendererFacto
             outputContextMap(SlingTestContextProvider.getContext().output());
         }
         endItem();
+        // let clients see the progress of long test runs
+        writer.flush();
     }
 
     @Override
@@ -172,6 +174,11 @@ public class JsonRenderer extends RunListener implements Renderer, RendererFacto
     }
 
     void outputContextMap(Map<String, Object> data) throws JsonException {
+        writeContextMap(writer, data);
+    }
+
+    /** Write the supplied test context data as the {@value #TEST_METADATA} object */
+    static void writeContextMap(JsonGenerator writer, Map<String, Object> data) throws JsonException {
         writer.writeStartObject(TEST_METADATA);
         try {
             for (Map.Entry<String, Object> e : data.entrySet()) {
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import org.apache.sling.junit.Renderer;
+import org.apache.sling.junit.RendererFactory;
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.apache.sling.junit.TestSelector;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Newline delimited JSON renderer for JUnit servlet, which writes
+ *  and flushes one self-contained JSON object per line, with the same
+ *  fields as the {@link JsonRenderer} items.
+ */
+@Component
+public class NdjsonRenderer extends RunListener implements Renderer, RendererFactory {
+
+    public static final String EXTENSION = "ndjson";
+    // looking up the JSON provider is expensive, one generator is created per line
+    private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private PrintWriter output;
+    private final Map<Description, Failure> runningTests = new HashMap<>();
+
+    public Renderer createRenderer() {
+        return new NdjsonRenderer();
+    }
+
+    public boolean appliesTo(TestSelector selector) {
+        return EXTENSION.equals(selector.getExtension());
+    }
+
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    public void setup(HttpServletResponse response, String pageTitle) throws IOException, UnsupportedEncodingException {
+        if (output != null) {
+            throw new IllegalStateException("Output Writer already set");
+        }
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        output = response.getWriter();
+    }
+
+    public void cleanup() {
+        if (output != null) {
+            output.flush();
+        }
+        output = null;
+    }
+
+    public void info(String cssClass, String info) {
+        writeItem("info", writer -> {
+            writer.write(JsonRenderer.INFO_SUBTYPE_KEY, cssClass);
+            writer.write("info", info);
+        });
+    }
+
+    public void list(String cssClass, Collection<String> data) {
+        writeItem("list", writer -> {
+            writer.write(JsonRenderer.INFO_SUBTYPE_KEY, cssClass);
+            writer.writeStartArray("data");
+            for (String str : data) {
+                writer.write(str);
+            }
+            writer.writeEnd();
+        });
+    }
+
+    public void title(int level, String title) {
+        // Titles are not needed in Json
+    }
+
+    public void link(String info, String url, String method) {
+        writeItem("link", writer -> {
+            writer.write("info", info);
+            writer.write("method", method);
+            writer.write("url", url);
+        });
+    }
+
+    public RunListener getRunListener() {
+        return this;
+    }
+
+    @Override
+    public void testStarted(Description description) throws Exception {
+        super.testStarted(description);
+        runningTests.put(description, null);
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        super.testFinished(description);
+        writeTest(description, runningTests.remove(description));
+    }
+
+    @Override
+    public void testFailure(Failure failure) throws Exception {
+        if (runningTests.containsKey(failure.getDescription())) {
+            runningTests.put(failure.getDescription(), failure);
+        } else {
+            // failure outside of a test, like in a @BeforeClass method
+            writeTest(failure.getDescription(), failure);
+        }
+    }
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        writeItem("summary", writer -> {
+            writer.write("tests", result.getRunCount());
+            writer.write("failures", result.getFailureCount());
+            writer.write("ignored", result.getIgnoreCount());
+            writer.write("time_msec", result.getRunTime());
+        });
+    }
+
+    private void writeTest(Description description, Failure failure) {
+        writeItem("test", writer -> {
+            writer.write("description", description.toString());
+            if (failure != null) {
+                writer.write("failure", failure.toString());
+                writer.write("trace", failure.getTrace());
+            }
+            if (SlingTestContextProvider.hasContext()) {
+                JsonRenderer.writeContextMap(
+                        writer, SlingTestContextProvider.getContext().output());
+            }
+        });
+    }
+
+    /** Write a single JSON object as one line and flush it to the client */
+    private void writeItem(String infoType, ItemWriter itemWriter) {
+        final StringWriter line = new StringWriter();
+        try (JsonGenerator writer = GENERATOR_FACTORY.createGenerator(line)) {
+            writer.writeStartObject();
+            writer.write(JsonRenderer.INFO_TYPE_KEY, infoType);
+            itemWriter.write(writer);
+            writer.writeEnd();
+        } catch (JsonException jex) {
+            log.warn("JsonException in writeItem()", jex);
+            return;
+        }
+        output.println(line);
+        output.flush();
+    }
+
+    @FunctionalInterface
+    private interface ItemWriter {
+        void write(JsonGenerator writer) throws JsonException;
+    }
+}
@@ -27,7 +27,9 @@ import java.util.Collection;
 
 import org.apache.sling.junit.Renderer;
 import org.apache.sling.junit.RendererFactory;
+import org.apache.sling.junit.SlingTestContextProvider;
 import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.impl.TestContextRunListenerWrapper;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
@@ -104,7 +106,11 @@ public class PlainTextRenderer extends RunListener implements Renderer, Renderer
     @Override
     public void testFinished(Description description) throws Exception {
         super.testFinished(description);
-        output.println("FINISHED " + description);
+        final String timings = SlingTestContextProvider.hasContext()
+                ? TestContextRunListenerWrapper.formatTimings(
+                        SlingTestContextProvider.getContext().output())
+                : null;
+        output.println("FINISHED " + description + (timings == null ? "" : " (" + timings + ")"));
     }
 
     @Override
@@ -18,6 +18,7 @@
  */
 package org.apache.sling.junit.impl.servlet;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -26,6 +27,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -33,6 +42,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.junit.Renderer;
 import org.apache.sling.junit.RendererSelector;
 import org.apache.sling.junit.RequestParser;
+import org.apache.sling.junit.TestRun;
 import org.apache.sling.junit.TestSelector;
 import org.apache.sling.junit.TestsManager;
 import org.slf4j.Logger;
@@ -44,14 +54,55 @@ public class ServletProcessor {
 
     public static final String CSS = "junit.css";
     public static final String FORCE_RELOAD_PARAM = "forceReload";
+    /** POST parameter to execute tests asynchronously, as a test run whose results are retrieved later */
+    public static final String ASYNC_PARAM = "async";
+    /** GET parameter with the id of a test run whose status and results are rendered */
+    public static final String TEST_RUN_PARAM = "testRun";
+    /** Not defined by HttpServletResponse */
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    /** Response header with the status of a test run */
+    public static final String TEST_RUN_STATUS_HEADER = "Sling-JUnit-Test-Run-Status";
 
     private final TestsManager testsManager;
 
     private final RendererSelector rendererSelector;
 
+    /** Executes tests of asynchronous requests, so that they do not block a container thread.
+     *  If all its threads are busy, tests are executed on the container thread.
+     *  Null if tests are always executed on the container thread.
+     */
+    private final ExecutorService executor;
+
     public ServletProcessor(final TestsManager testsManager, final RendererSelector rendererSelector) {
+        this(testsManager, rendererSelector, 0);
+    }
+
+    /**
+     * @param maxExecutorThreads maximum number of threads that execute tests of asynchronous requests,
+     *  0 to execute tests on the container thread even if the request supports asynchronous processing
+     */
+    ServletProcessor(
+            final TestsManager testsManager, final RendererSelector rendererSelector, final int maxExecutorThreads) {
         this.testsManager = testsManager;
         this.rendererSelector = rendererSelector;
+        if (maxExecutorThreads <= 0) {
+            executor = null;
+            return;
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                0, maxExecutorThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "sling-junit-servlet-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Stop executing tests of asynchronous requests */
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
     }
 
     private void sendCss(HttpServletResponse response) throws IOException {
@@ -94,6 +145,12 @@ public class ServletProcessor {
         }
 
         final TestSelector selector = getTestSelector(request);
+        final String testRunId = request.getParameter(TEST_RUN_PARAM);
+        if (testRunId != null) {
+            renderTestRun(response, selector, testRunId);
+            return;
+        }
+
         final Collection<String> testNames = testsManager.getTestNames(selector);
 
         // 404 if no tests found
@@ -133,23 +190,132 @@ public class ServletProcessor {
         if (renderer == null) {
             throw new ServletException("No Renderer found for " + selector);
         }
-        renderer.setup(response, getClass().getSimpleName());
+        if (Boolean.parseBoolean(request.getParameter(ASYNC_PARAM))) {
+            submitTests(request, response, selector, renderer);
+        } else if (executor != null && request.isAsyncSupported()) {
+            // keep the container thread available while the tests run
+            final AsyncContext asyncContext = request.startAsync();
+            asyncContext.setTimeout(0);
+            try {
+                executor.execute(() -> executeTestsAsync(asyncContext, response, selector, renderer));
+            } catch (RejectedExecutionException e) {
+                log.debug("All threads are busy, executing tests on the container thread: {}", selector);
+                executeTestsAsync(asyncContext, response, selector, renderer);
+            }
+        } else {
+            executeTests(response, selector, renderer);
+        }
+    }
 
+    private void executeTests(HttpServletResponse response, TestSelector selector, Renderer renderer)
+            throws ServletException, IOException {
+        // errors can only be sent before the renderer writes to the response
+        final TestsManager.ReservedTestRun reservedTestRun;
         try {
-            testsManager.executeTests(renderer, selector);
+            reservedTestRun = testsManager.reserveTestRun(selector);
         } catch (TestsManager.NoTestCasesFoundException e) {
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "No tests found for " + selector);
             return;
+        } catch (TestsManager.TooManyTestRunsException e) {
+            sendTooManyTestRuns(response, e);
+            return;
+        }
+
+        try (TestsManager.ReservedTestRun testRun = reservedTestRun) {
+            renderer.setup(response, getClass().getSimpleName());
+            try {
+                testRun.execute(renderer);
+            } catch (Exception e) {
+                throw new ServletException(e);
+            } finally {
+                renderer.cleanup();
+            }
+        }
+    }
+
+    /** Execute tests and write the renderer output, then complete the asynchronous request */
+    private void executeTestsAsync(
+            AsyncContext asyncContext, HttpServletResponse response, TestSelector selector, Renderer renderer) {
+        try {
+            executeTests(response, selector, renderer);
         } catch (Exception e) {
-            throw new ServletException(e);
+            log.error("Test execution failed for {}", selector, e);
+            if (!response.isCommitted()) {
+                try {
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Test execution failed");
+                } catch (IOException ioe) {
+                    log.warn("Unable to send error response", ioe);
+                }
+            }
+        } finally {
+            asyncContext.complete();
         }
+    }
 
+    private static void sendTooManyTestRuns(HttpServletResponse response, TestsManager.TooManyTestRunsException e)
+            throws IOException {
+        response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        response.sendError(SC_TOO_MANY_REQUESTS, e.getMessage());
+    }
+
+    /** Submit tests for asynchronous execution and render a link to their results */
+    private void submitTests(
+            HttpServletRequest request, HttpServletResponse response, TestSelector selector, Renderer renderer)
+            throws IOException {
+        final String testRunId;
+        try {
+            testRunId = testsManager.submitTests(selector);
+        } catch (TestsManager.NoTestCasesFoundException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "No tests found for " + selector);
+            return;
+        } catch (TestsManager.TooManyTestRunsException e) {
+            sendTooManyTestRuns(response, e);
+            return;
+        }
+        response.setStatus(HttpServletResponse.SC_ACCEPTED);
+        response.setHeader(TEST_RUN_STATUS_HEADER, TestRun.Status.QUEUED.name());
+        renderer.setup(response, getClass().getSimpleName());
+        renderer.info("testRun", testRunId);
+        final String testRunPath = getTestExecutionPath(request, selector, renderer.getExtension()) + "?"
+                + TEST_RUN_PARAM + "=" + testRunId;
+        renderer.link("Test run status and results", testRunPath, "GET");
+        renderer.cleanup();
+    }
+
+    /** Render the status and the results so far of a test run */
+    private void renderTestRun(HttpServletResponse response, TestSelector selector, String testRunId)
+            throws ServletException, IOException {
+        final TestRun testRun = testsManager.getTestRun(testRunId);
+        if (testRun == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Test run not found: " + testRunId);
+            return;
+        }
+        final Renderer renderer = rendererSelector.getRenderer(selector);
+        if (renderer == null) {
+            throw new ServletException("No Renderer found for " + selector);
+        }
+        log.debug("GET request for test run {}: {}", testRunId, selector);
+
+        response.setHeader(TEST_RUN_STATUS_HEADER, testRun.getStatus().name());
+        renderer.setup(response, getClass().getSimpleName());
+        renderer.info("testRunStatus", "Test run " + testRunId + ": " + testRun.getStatus());
+        try {
+            testRun.render(renderer);
+        } catch (Exception e) {
+            throw new ServletException(e);
+        }
         renderer.cleanup();
     }
 
     /** Return a TestSelector for supplied request */
     private TestSelector getTestSelector(HttpServletRequest request) {
-        return new RequestParser(getTestSelectionPath(request));
+        final Map<String, String> parameters = new HashMap<>();
+        for (Map.Entry<String, String[]> e : request.getParameterMap().entrySet()) {
+            if (e.getValue() != null && e.getValue().length > 0) {
+                parameters.put(e.getKey(), e.getValue()[0]);
+            }
+        }
+        return new RequestParser(getTestSelectionPath(request), parameters);
     }
 
     /** Return subpath to use for selecting tests */
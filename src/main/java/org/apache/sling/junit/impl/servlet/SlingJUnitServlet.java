@@ -97,6 +97,9 @@ public class SlingJUnitServlet extends HttpServlet {
 
     @Deactivate
     protected void deactivate(ComponentContext ctx) {
+        if (this.processor != null) {
+            this.processor.close();
+        }
         this.processor = null;
     }
 
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.stream.JsonGenerator;
+import jakarta.json.stream.JsonGeneratorFactory;
+import org.apache.sling.junit.Renderer;
+import org.apache.sling.junit.RendererFactory;
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.apache.sling.junit.TestSelector;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Server-Sent Events renderer for JUnit servlet, to follow the progress
+ *  of a test run live. Each event is flushed immediately, its data is a
+ *  JSON object, and comments are sent as heartbeats while tests run so
+ *  that proxies do not close the connection.
+ */
+@Component
+public class SseRenderer extends RunListener implements Renderer, RendererFactory {
+
+    public static final String EXTENSION = "sse";
+    public static final long HEARTBEAT_INTERVAL_SECONDS = 15;
+    // looking up the JSON provider is expensive, one generator is created per event
+    private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    /** Sends the heartbeats of all responses, owned by the RendererFactory component */
+    ScheduledThreadPoolExecutor heartbeatScheduler;
+
+    private PrintWriter output;
+    private ScheduledFuture<?> heartbeat;
+
+    public SseRenderer() {
+        this(null);
+    }
+
+    /** @param heartbeatScheduler sends the heartbeats, null to send none */
+    SseRenderer(ScheduledThreadPoolExecutor heartbeatScheduler) {
+        this.heartbeatScheduler = heartbeatScheduler;
+    }
+
+    @Activate
+    protected void activate() {
+        heartbeatScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "sling-junit-sse-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatScheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (heartbeatScheduler != null) {
+            heartbeatScheduler.shutdownNow();
+            heartbeatScheduler = null;
+        }
+    }
+
+    public Renderer createRenderer() {
+        return new SseRenderer(heartbeatScheduler);
+    }
+
+    public boolean appliesTo(TestSelector selector) {
+        return EXTENSION.equals(selector.getExtension());
+    }
+
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    public void setup(HttpServletResponse response, String pageTitle) throws IOException, UnsupportedEncodingException {
+        if (output != null) {
+            throw new IllegalStateException("Output Writer already set");
+        }
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        output = response.getWriter();
+        if (heartbeatScheduler != null) {
+            heartbeat = heartbeatScheduler.scheduleAtFixedRate(
+                    this::writeHeartbeat, HEARTBEAT_INTERVAL_SECONDS, HEARTBEAT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    public synchronized void cleanup() {
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+        if (output != null) {
+            output.flush();
+        }
+        output = null;
+    }
+
+    public void info(String cssClass, String info) {
+        writeEvent("info", writer -> {
+            writer.write(JsonRenderer.INFO_SUBTYPE_KEY, cssClass);
+            writer.write("info", info);
+        });
+    }
+
+    public void list(String cssClass, Collection<String> data) {
+        writeEvent("list", writer -> {
+            writer.write(JsonRenderer.INFO_SUBTYPE_KEY, cssClass);
+            writer.writeStartArray("data");
+            for (String str : data) {
+                writer.write(str);
+            }
+            writer.writeEnd();
+        });
+    }
+
+    public void title(int level, String title) {
+        // Titles are not needed in events
+    }
+
+    public void link(String info, String url, String method) {
+        // Links are not needed in events
+    }
+
+    public RunListener getRunListener() {
+        return this;
+    }
+
+    @Override
+    public void testStarted(Description description) throws Exception {
+        writeEvent("testStarted", writer -> writer.write("description", description.toString()));
+    }
+
+    @Override
+    public void testFinished(Description description) throws Exception {
+        writeEvent("testFinished", writer -> {
+            writer.write("description", description.toString());
+            if (SlingTestContextProvider.hasContext()) {
+                JsonRenderer.writeContextMap(
+                        writer, SlingTestContextProvider.getContext().output());
+            }
+        });
+    }
+
+    @Override
+    public void testFailure(Failure failure) throws Exception {
+        writeEvent("testFailure", writer -> {
+            writer.write("description", failure.getDescription().toString());
+            writer.write("failure", failure.toString());
+            writer.write("trace", failure.getTrace());
+        });
+    }
+
+    @Override
+    public void testIgnored(Description description) throws Exception {
+        writeEvent("testIgnored", writer -> writer.write("description", description.toString()));
+    }
+
+    @Override
+    public void testRunFinished(Result result) throws Exception {
+        writeEvent("testRunFinished", writer -> {
+            writer.write("tests", result.getRunCount());
+            writer.write("failures", result.getFailureCount());
+            writer.write("ignored", result.getIgnoreCount());
+            writer.write("time_msec", result.getRunTime());
+        });
+    }
+
+    /** Write an event with a single line JSON object as data and flush it to the client */
+    private void writeEvent(String name, EventWriter eventWriter) {
+        final StringWriter data = new StringWriter();
+        try (JsonGenerator writer = GENERATOR_FACTORY.createGenerator(data)) {
+            writer.writeStartObject();
+            eventWriter.write(writer);
+            writer.writeEnd();
+        } catch (JsonException jex) {
+            log.warn("JsonException in writeEvent()", jex);
+            return;
+        }
+        synchronized (this) {
+            if (output != null) {
+                output.print("event: " + name + "\n");
+                output.print("data: " + data + "\n\n");
+                output.flush();
+            }
+        }
+    }
+
+    private synchronized void writeHeartbeat() {
+        if (output != null) {
+            output.print(": heartbeat\n\n");
+            output.flush();
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventWriter {
+        void write(JsonGenerator writer) throws JsonException;
+    }
+}
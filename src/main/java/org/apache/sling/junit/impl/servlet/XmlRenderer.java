@@ -19,15 +19,9 @@
 package org.apache.sling.junit.impl.servlet;
 
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -36,23 +30,33 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import junit.runner.BaseTestRunner;
 import org.apache.sling.junit.Renderer;
 import org.apache.sling.junit.RendererFactory;
+import org.apache.sling.junit.SlingTestContextProvider;
 import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.impl.ResourceUsageRunListener;
+import org.apache.sling.junit.impl.TestContextRunListenerWrapper;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 import org.osgi.service.component.annotations.Component;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-/** XML renderer for JUnit servlet */
+/** XML renderer for JUnit servlet, which streams a JUnit XML report
+ *  with one testsuite element per test class. Only the test cases of
+ *  the test classes that are currently running are kept in memory.
+ */
 @Component
 public class XmlRenderer extends RunListener implements Renderer, RendererFactory {
 
@@ -61,55 +65,45 @@ public class XmlRenderer extends RunListener implements Renderer, RendererFactor
      */
     public static final String EXTENSION = "xml";
 
-    /**
-     * Writer used for output.
-     */
-    private PrintWriter output;
-
-    /**
-     * The XML document.
-     */
-    private Document doc;
-
-    /**
-     * The wrapper for the testsuites.
-     */
-    private Element suitesElement;
-
-    /**
-     * The wrapper for the whole testsuite.
-     */
-    private Element rootElement;
+    private static final Logger log = LoggerFactory.getLogger(XmlRenderer.class);
 
     /**
-     * Table to track tests.
+     * Test context output that is written as properties of a test case.
      */
-    private Hashtable<Description, Element> testElements = new Hashtable<Description, Element>();
+    private static final List<String> TEST_PROPERTIES = Arrays.asList(
+            TestContextRunListenerWrapper.START_OFFSET_USEC,
+            TestContextRunListenerWrapper.EXECUTION_TIME_USEC,
+            TestContextRunListenerWrapper.THREAD_NAME,
+            ResourceUsageRunListener.CPU_TIME_NSEC,
+            ResourceUsageRunListener.ALLOCATED_BYTES,
+            ResourceUsageRunListener.GC_COUNT,
+            ResourceUsageRunListener.GC_TIME_MSEC,
+            ResourceUsageRunListener.HEAP_DELTA_BYTES);
 
     /**
-     * List to track falures.
+     * Writer used for output.
      */
-    private ArrayList<Description> failures = new ArrayList<Description>();
+    private PrintWriter output;
 
     /**
-     * Table to track test run times.
+     * Streams the XML report to the output.
      */
-    Hashtable<Description, Long> tests = new Hashtable<Description, Long>();
+    private XMLStreamWriter writer;
 
     /**
-     * Test Suite name.
+     * Test suites that are not written yet, by test class name.
      */
-    private String name;
+    private final Map<String, TestSuite> testSuites = new LinkedHashMap<>();
 
     /**
-     * Start time for the test suite.
+     * Test cases that are not finished yet.
      */
-    private long suiteStartTime = 0;
+    private final Map<Description, TestCase> runningTests = new HashMap<>();
 
     /**
-     * Counter of test suites.
+     * Name of the local host.
      */
-    private int testSuiteCount = 0;
+    private String hostname;
 
     public Renderer createRenderer() {
         return new XmlRenderer();
@@ -127,33 +121,43 @@ public class XmlRenderer extends RunListener implements Renderer, RendererFactor
         if (output != null) {
             throw new IllegalStateException("Output Writer already set");
         }
-        suiteStartTime = System.currentTimeMillis();
+        hostname = getHostname();
 
         response.setContentType("text/xml");
         response.setCharacterEncoding("UTF-8");
         output = response.getWriter();
 
-        doc = getDocumentBuilder().newDocument();
-
-        suitesElement = doc.createElement("testsuites");
+        try {
+            writer = XMLOutputFactory.newFactory().createXMLStreamWriter(output);
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("testsuites");
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to start XML output", e);
+        }
     }
 
     public void info(String cssClass, String str) {}
 
     public void list(String cssClass, Collection<String> data) {}
 
-    public void title(int level, String title) {
-        if (level == 3) name = title;
-    }
+    public void title(int level, String title) {}
 
     public void link(String info, String url, String method) {}
 
     public void cleanup() {
-        if (testSuiteCount > 1) {
-            output.println(getStringFromElement(suitesElement));
-        } else {
-            output.println(getStringFromElement(rootElement));
+        if (writer != null) {
+            try {
+                writeTestSuites();
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.flush();
+                writer.close();
+            } catch (XMLStreamException e) {
+                log.warn("XMLStreamException in cleanup()", e);
+            }
+            output.println();
         }
+        writer = null;
         output = null;
     }
 
@@ -164,35 +168,34 @@ public class XmlRenderer extends RunListener implements Renderer, RendererFactor
     @Override
     public void testFailure(Failure failure) throws Exception {
         super.testFailure(failure);
-        failures.add(failure.getDescription());
-
-        Element nested = doc.createElement("failure");
-        Element currentTest = testElements.get(failure.getDescription());
-
-        currentTest.appendChild(nested);
-
-        String message = failure.getMessage();
-        if (message != null && message.length() > 0) {
-            nested.setAttribute("message", message);
+        TestCase testCase = runningTests.get(failure.getDescription());
+        if (testCase == null) {
+            // failure outside of a test, like in a @BeforeClass method
+            testCase = new TestCase(failure.getDescription());
+            getTestSuite(failure.getDescription()).add(testCase);
         }
-        nested.setAttribute("type", failure.getClass().getName());
-
-        String strace = getException(failure.getException());
-        strace = BaseTestRunner.getFilteredTrace(strace);
-        Text trace = doc.createTextNode(strace);
-        nested.appendChild(trace);
+        testCase.failure = failure;
     }
 
     @Override
     public void testFinished(Description description) throws Exception {
         super.testFinished(description);
-
-        Long startTime = tests.get(description);
-        long totalTime = System.currentTimeMillis() - startTime.longValue();
-
-        Element currentTest = (Element) testElements.get(description);
-
-        currentTest.setAttribute("time", String.valueOf(totalTime / 1000.0));
+        final TestCase testCase = runningTests.remove(description);
+        if (testCase != null) {
+            testCase.time = (System.currentTimeMillis() - testCase.startTime) / 1000.0;
+            final Map<String, Object> output = SlingTestContextProvider.hasContext()
+                    ? SlingTestContextProvider.getContext().output()
+                    : Collections.emptyMap();
+            final Object usec = output.get(TestContextRunListenerWrapper.EXECUTION_TIME_USEC);
+            if (usec instanceof Long) {
+                testCase.time = (Long) usec / 1000000.0;
+            }
+            for (String key : TEST_PROPERTIES) {
+                if (output.containsKey(key)) {
+                    testCase.properties.put(key, String.valueOf(output.get(key)));
+                }
+            }
+        }
     }
 
     @Override
@@ -203,103 +206,47 @@ public class XmlRenderer extends RunListener implements Renderer, RendererFactor
     @Override
     public void testRunFinished(Result result) throws Exception {
         super.testRunFinished(result);
-        String cssClass = "testRun ";
-        if (result.getFailureCount() > 0) {
-            cssClass += "failure";
-        } else if (result.getIgnoreCount() > 0) {
-            cssClass += "ignored";
-        } else {
-            cssClass += "success";
-        }
-
-        long suiteEndTime = System.currentTimeMillis();
-
-        rootElement.setAttribute("name", name);
-
-        rootElement.setAttribute("timestamp", String.valueOf(suiteEndTime));
-
-        rootElement.setAttribute("hostname", getHostname());
-
-        rootElement.setAttribute("tests", "" + result.getRunCount());
-        rootElement.setAttribute("failures", "" + result.getFailureCount());
-        // rootElement.setAttribute("errors", "" + result.getIgnoreCount());
-        rootElement.setAttribute("time", "" + ((suiteEndTime - suiteStartTime) / 1000.0));
-    }
-
-    @Override
-    public void testRunStarted(Description description) throws Exception {
-        super.testRunStarted(description);
-
-        testSuiteCount++;
-        rootElement = doc.createElement("testsuite");
-        suitesElement.appendChild(rootElement);
-
-        // Output properties
-        Element propsElement = doc.createElement("properties");
-        rootElement.appendChild(propsElement);
+        writeTestSuites();
+        writer.flush();
     }
 
     @Override
     public void testSuiteStarted(Description description) throws Exception {
         super.testSuiteStarted(description);
         if (description.getTestClass() != null) {
-            title(3, description.getClassName());
+            getTestSuite(description);
+        }
+    }
+
+    @Override
+    public void testSuiteFinished(Description description) throws Exception {
+        super.testSuiteFinished(description);
+        final TestSuite testSuite =
+                description.getTestClass() == null ? null : testSuites.remove(description.getClassName());
+        if (testSuite != null) {
+            testSuite.write();
+            writer.flush();
         }
     }
 
     @Override
     public void testStarted(Description description) throws Exception {
         super.testStarted(description);
-        tests.put(description, new Long(System.currentTimeMillis()));
-
-        Element currentTest = doc.createElement("testcase");
-        String n = description.getDisplayName();
-        n = n.substring(0, n.indexOf("("));
-        currentTest.setAttribute("name", n == null ? "unknown" : n);
-        currentTest.setAttribute("classname", description.getClassName());
-        rootElement.appendChild(currentTest);
-        testElements.put(description, currentTest);
+        final TestCase testCase = new TestCase(description);
+        runningTests.put(description, testCase);
+        getTestSuite(description).add(testCase);
     }
 
-    /**
-     * Create a DocumentBuilder.
-     * @return a DocumentBuilder.
-     */
-    public static DocumentBuilder getDocumentBuilder() {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-            factory.setExpandEntityReferences(false);
-            return factory.newDocumentBuilder();
-        } catch (Exception exc) {
-            throw new ExceptionInInitializerError(exc);
-        }
+    private TestSuite getTestSuite(Description description) {
+        return testSuites.computeIfAbsent(description.getClassName(), TestSuite::new);
     }
 
-    /**
-     * Convert an Element to a String representation
-     * @param element
-     * @return a String representation
-     */
-    public static String getStringFromElement(Element element) {
-        try {
-            TransformerFactory tf = TransformerFactory.newInstance();
-            tf.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-            tf.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
-            Transformer trans = tf.newTransformer();
-            StringWriter sw = new StringWriter();
-            trans.transform(new DOMSource(element), new StreamResult(sw));
-            String elementString = sw.toString();
-            return elementString;
-        } catch (TransformerConfigurationException e) {
-            System.err.println(getException(e));
-        } catch (TransformerException e) {
-            System.err.println(getException(e));
+    /** Write and remove the test suites that are not written yet */
+    private void writeTestSuites() throws XMLStreamException {
+        for (TestSuite testSuite : testSuites.values()) {
+            testSuite.write();
         }
-        return "";
+        testSuites.clear();
     }
 
     /**
@@ -326,4 +273,88 @@ public class XmlRenderer extends RunListener implements Renderer, RendererFactor
 
         return sw.getBuffer().toString();
     } // getException
+
+    /** A test case of a test suite that is not written yet */
+    private static class TestCase {
+
+        private final Description description;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private double time;
+
+        private Failure failure;
+
+        private final Map<String, String> properties = new LinkedHashMap<>();
+
+        TestCase(Description description) {
+            this.description = description;
+        }
+    }
+
+    /** A test class with its test cases, which is written once all its tests are finished */
+    private class TestSuite {
+
+        private final String name;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private final List<TestCase> testCases = new ArrayList<>();
+
+        TestSuite(String name) {
+            this.name = name;
+        }
+
+        void add(TestCase testCase) {
+            testCases.add(testCase);
+        }
+
+        void write() throws XMLStreamException {
+            final long failures =
+                    testCases.stream().filter(t -> t.failure != null).count();
+            writer.writeStartElement("testsuite");
+            writer.writeAttribute("name", name);
+            writer.writeAttribute("timestamp", String.valueOf(startTime));
+            writer.writeAttribute("hostname", hostname);
+            writer.writeAttribute("tests", String.valueOf(testCases.size()));
+            writer.writeAttribute("failures", String.valueOf(failures));
+            writer.writeAttribute("time", String.valueOf((System.currentTimeMillis() - startTime) / 1000.0));
+            for (TestCase testCase : testCases) {
+                writeTestCase(testCase);
+            }
+            writer.writeEndElement();
+        }
+
+        private void writeTestCase(TestCase testCase) throws XMLStreamException {
+            final String methodName = testCase.description.getMethodName();
+            writer.writeStartElement("testcase");
+            writer.writeAttribute("name", methodName == null ? testCase.description.getDisplayName() : methodName);
+            writer.writeAttribute("classname", testCase.description.getClassName());
+            writer.writeAttribute("time", String.valueOf(testCase.time));
+            if (!testCase.properties.isEmpty()) {
+                writer.writeStartElement("properties");
+                for (Map.Entry<String, String> property : testCase.properties.entrySet()) {
+                    writer.writeEmptyElement("property");
+                    writer.writeAttribute("name", property.getKey());
+                    writer.writeAttribute("value", property.getValue());
+                }
+                writer.writeEndElement();
+            }
+            if (testCase.failure != null) {
+                final Failure failure = testCase.failure;
+                writer.writeStartElement("failure");
+                final String message = failure.getMessage();
+                if (message != null && message.length() > 0) {
+                    writer.writeAttribute("message", message);
+                }
+                final Throwable exception = failure.getException();
+                if (exception != null) {
+                    writer.writeAttribute("type", exception.getClass().getName());
+                    writer.writeCharacters(BaseTestRunner.getFilteredTrace(getException(exception)));
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+        }
+    }
 }
@@ -20,7 +20,9 @@ package org.apache.sling.junit.impl.servlet.junit5;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.sling.junit.TestSelector;
 import org.apache.sling.junit.impl.TestExecutionStrategy;
@@ -44,25 +46,125 @@ public class JUnit5TestExecutionStrategy implements TestExecutionStrategy {
         });
     }
 
+    static final String PARALLEL_ENABLED = "junit.jupiter.execution.parallel.enabled";
+
+    static final String PARALLEL_MODE_CLASSES_DEFAULT = "junit.jupiter.execution.parallel.mode.classes.default";
+
+    static final String PARALLEL_CONFIG_STRATEGY = "junit.jupiter.execution.parallel.config.strategy";
+
+    static final String PARALLEL_CONFIG_FIXED_PARALLELISM = "junit.jupiter.execution.parallel.config.fixed.parallelism";
+
+    /** Launcher configuration parameters that can be set by the {@link TestSelector} */
+    static final List<String> PARALLEL_PARAMS = Collections.unmodifiableList(Arrays.asList(
+            PARALLEL_ENABLED,
+            "junit.jupiter.execution.parallel.mode.default",
+            PARALLEL_MODE_CLASSES_DEFAULT,
+            PARALLEL_CONFIG_STRATEGY,
+            PARALLEL_CONFIG_FIXED_PARALLELISM,
+            "junit.jupiter.execution.parallel.config.dynamic.factor"));
+
     private final TestsManagerImpl testsManager;
 
     private final TestEngineTracker testEngineTracker;
 
+    private final boolean parallelByDefault;
+
+    private final int parallelThreads;
+
+    private final Map<String, String> configurationParameters;
+
+    private volatile CachedLauncher cachedLauncher;
+
     public JUnit5TestExecutionStrategy(TestsManagerImpl testsManager, BundleContext ctx) {
+        this(testsManager, ctx, false, 0, Collections.emptyMap());
+    }
+
+    /**
+     * @param parallelByDefault whether test classes run in parallel if not specified by the {@link TestSelector}
+     * @param parallelThreads maximum number of test classes that run in parallel, 0 to use the JUnit Platform default
+     * @param configurationParameters launcher configuration parameters, like {@code junit.jupiter.execution.parallel.*}
+     */
+    public JUnit5TestExecutionStrategy(
+            TestsManagerImpl testsManager,
+            BundleContext ctx,
+            boolean parallelByDefault,
+            int parallelThreads,
+            Map<String, String> configurationParameters) {
         this.testsManager = testsManager;
+        this.parallelByDefault = parallelByDefault;
+        this.parallelThreads = parallelThreads;
+        this.configurationParameters = Collections.unmodifiableMap(new HashMap<>(configurationParameters));
         testEngineTracker = new TestEngineTracker(ctx);
     }
 
     @Override
     public void close() {
+        cachedLauncher = null;
         testEngineTracker.close();
     }
 
     @Override
     public void execute(TestSelector selector, RunListener runListener) throws Exception {
-        Launcher launcher = JUnitPlatformHelper.createLauncher(testEngineTracker.getAvailableTestEngines());
+        final Launcher launcher = getLauncher();
+        final Map<String, String> parameters = getConfigurationParameters(selector);
         final LauncherDiscoveryRequest request = testsManager.createTestRequest(
-                selector, JUnitPlatformHelper::methodRequest, JUnitPlatformHelper::classesRequest);
+                selector,
+                (testClass, testMethodName) -> JUnitPlatformHelper.methodRequest(testClass, testMethodName, parameters),
+                testClasses -> JUnitPlatformHelper.classesRequest(parameters, testClasses));
         launcher.execute(request, new RunListenerAdapter(runListener));
     }
+
+    /** Return the Launcher for the available test engines, which is
+     *  only created again if the TestEngineTracker observed a bundle change.
+     */
+    private Launcher getLauncher() {
+        CachedLauncher cached = cachedLauncher;
+        // read the tracking count first, a concurrent change causes another update on the next call
+        final int trackingCount = testEngineTracker.getTrackingCount();
+        if (cached == null || cached.trackingCount != trackingCount) {
+            cached = new CachedLauncher(
+                    trackingCount, JUnitPlatformHelper.createLauncher(testEngineTracker.getAvailableTestEngines()));
+            cachedLauncher = cached;
+        }
+        return cached.launcher;
+    }
+
+    /** Return the launcher configuration parameters for the supplied selector, which
+     *  override the configured ones. Running test classes in parallel maps to
+     *  the corresponding {@code junit.jupiter.execution.parallel.*} parameters.
+     */
+    Map<String, String> getConfigurationParameters(TestSelector selector) {
+        final Map<String, String> parameters = new HashMap<>(configurationParameters);
+        if (TestExecutionStrategy.isParallel(selector, parallelByDefault)) {
+            parameters.put(PARALLEL_ENABLED, "true");
+            parameters.putIfAbsent(PARALLEL_MODE_CLASSES_DEFAULT, "concurrent");
+            if (parallelThreads > 0) {
+                parameters.putIfAbsent(PARALLEL_CONFIG_STRATEGY, "fixed");
+                parameters.putIfAbsent(PARALLEL_CONFIG_FIXED_PARALLELISM, String.valueOf(parallelThreads));
+            }
+        } else if (selector != null && selector.getParameter(PARALLEL_PARAM) != null) {
+            parameters.put(PARALLEL_ENABLED, "false");
+        }
+        if (selector != null) {
+            for (String name : PARALLEL_PARAMS) {
+                final String value = selector.getParameter(name);
+                if (value != null) {
+                    parameters.put(name, value);
+                }
+            }
+        }
+        return parameters;
+    }
+
+    private static class CachedLauncher {
+
+        private final int trackingCount;
+
+        private final Launcher launcher;
+
+        CachedLauncher(int trackingCount, Launcher launcher) {
+            this.trackingCount = trackingCount;
+            this.launcher = launcher;
+        }
+    }
 }
@@ -18,6 +18,8 @@
  */
 package org.apache.sling.junit.impl.servlet.junit5;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -91,7 +93,23 @@ public final class JUnitPlatformHelper {
      */
     @NotNull
     public static LauncherDiscoveryRequest methodRequest(Class<?> testClass, String testMethodName) {
-        final LauncherDiscoveryRequestBuilder requestBuilder = LauncherDiscoveryRequestBuilder.request();
+        return methodRequest(testClass, testMethodName, Collections.emptyMap());
+    }
+
+    /**
+     * Like {@link #methodRequest(Class, String)}, with the given launcher configuration parameters,
+     * e.g. to enable parallel execution with {@code junit.jupiter.execution.parallel.enabled}.
+     *
+     * @param testClass   a test class
+     * @param testMethodName  the name of a test method in the given test class or null to run all test methods
+     * @param configurationParameters  the configuration parameters of the request
+     * @return a {@code LauncherDiscoveryRequest} representing the specified test method.
+     */
+    @NotNull
+    public static LauncherDiscoveryRequest methodRequest(
+            Class<?> testClass, String testMethodName, Map<String, String> configurationParameters) {
+        final LauncherDiscoveryRequestBuilder requestBuilder =
+                LauncherDiscoveryRequestBuilder.request().configurationParameters(configurationParameters);
         ReflectionUtils.findMethods(testClass, method -> Objects.equals(method.getName(), testMethodName)).stream()
                 .map(method -> selectMethod(testClass, method))
                 .forEach(requestBuilder::selectors);
@@ -106,9 +124,26 @@ public final class JUnitPlatformHelper {
      */
     @NotNull
     public static LauncherDiscoveryRequest classesRequest(Class<?>... testClasses) {
+        return classesRequest(Collections.emptyMap(), testClasses);
+    }
+
+    /**
+     * Like {@link #classesRequest(Class[])}, with the given launcher configuration parameters,
+     * e.g. to enable parallel execution with {@code junit.jupiter.execution.parallel.enabled}.
+     *
+     * @param configurationParameters  the configuration parameters of the request
+     * @param testClasses   a number of test classes
+     * @return a {@code LauncherDiscoveryRequest} representing the specified test classes.
+     */
+    @NotNull
+    public static LauncherDiscoveryRequest classesRequest(
+            Map<String, String> configurationParameters, Class<?>... testClasses) {
         final DiscoverySelector[] selectors =
                 Stream.of(testClasses).map(DiscoverySelectors::selectClass).toArray(DiscoverySelector[]::new);
-        return LauncherDiscoveryRequestBuilder.request().selectors(selectors).build();
+        return LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectors)
+                .configurationParameters(configurationParameters)
+                .build();
     }
 
     private JUnitPlatformHelper() {
@@ -37,20 +37,38 @@ public class RunListenerAdapter implements TestExecutionListener {
 
     private final RunListener runListener;
 
+    // like JUnitCore, serialize the events unless the RunListener is thread-safe
+    private final boolean threadSafe;
+
     private final SummaryGeneratingListener summarizer;
 
     public RunListenerAdapter(RunListener runListener) {
         this.runListener = runListener;
+        this.threadSafe = runListener.getClass().isAnnotationPresent(RunListener.ThreadSafe.class);
         this.summarizer = new SummaryGeneratingListener();
     }
 
     @Override
     public void testPlanExecutionStarted(TestPlan testPlan) {
         summarizer.testPlanExecutionStarted(testPlan);
-        try {
-            runListener.testRunStarted(Description.createSuiteDescription("classes"));
-        } catch (Exception exception) {
-            throw new RuntimeException(exception);
+        final Description description = Description.createSuiteDescription("classes");
+        for (TestIdentifier root : testPlan.getRoots()) {
+            addDescription(testPlan, root, description);
+        }
+        notifyListener(listener -> listener.testRunStarted(description));
+    }
+
+    /** Add the Description of a TestIdentifier and its children to the supplied parent Description.
+     *  The children of TestIdentifiers without a Description, like the one of a TestEngine, are added
+     *  to the parent instead.
+     */
+    private static void addDescription(TestPlan testPlan, TestIdentifier testIdentifier, Description parent) {
+        final Description description = toDescription(testIdentifier).orElse(null);
+        if (description != null) {
+            parent.addChild(description);
+        }
+        for (TestIdentifier child : testPlan.getChildren(testIdentifier)) {
+            addDescription(testPlan, child, description == null ? parent : description);
         }
     }
 
@@ -62,20 +80,16 @@ public class RunListenerAdapter implements TestExecutionListener {
 
         final Result result = new ResultAdapter(summary);
 
-        try {
-            runListener.testRunFinished(result);
-        } catch (Exception exception) {
-            throw new RuntimeException(exception);
-        }
+        notifyListener(listener -> listener.testRunFinished(result));
     }
 
     @Override
     public void executionStarted(TestIdentifier testIdentifier) {
         summarizer.executionStarted(testIdentifier);
         if (testIdentifier.isTest()) {
-            withDescription(testIdentifier, runListener::testStarted);
+            withDescription(testIdentifier, RunListener::testStarted);
         } else {
-            withDescription(testIdentifier, runListener::testSuiteStarted);
+            withDescription(testIdentifier, RunListener::testSuiteStarted);
         }
     }
 
@@ -83,7 +97,7 @@ public class RunListenerAdapter implements TestExecutionListener {
     public void executionSkipped(TestIdentifier testIdentifier, String reason) {
         summarizer.executionSkipped(testIdentifier, reason);
         if (testIdentifier.isTest()) {
-            withDescription(testIdentifier, runListener::testIgnored);
+            withDescription(testIdentifier, RunListener::testIgnored);
         }
     }
 
@@ -91,27 +105,21 @@ public class RunListenerAdapter implements TestExecutionListener {
     public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
         summarizer.executionFinished(testIdentifier, testExecutionResult);
         if (testIdentifier.isTest()) {
-            try {
-                switch (testExecutionResult.getStatus()) {
-                    case FAILED:
-                        runListener.testFailure(FailureHelper.convert(
-                                testIdentifier,
-                                testExecutionResult.getThrowable().orElse(null)));
-                        break;
-                    case ABORTED:
-                        runListener.testAssumptionFailure(FailureHelper.convert(
-                                testIdentifier,
-                                testExecutionResult.getThrowable().orElse(null)));
-                        break;
-                    case SUCCESSFUL:
-                        break;
-                }
-            } catch (Exception exception) {
-                throw new RuntimeException(exception);
+            switch (testExecutionResult.getStatus()) {
+                case FAILED:
+                    notifyListener(listener -> listener.testFailure(FailureHelper.convert(
+                            testIdentifier, testExecutionResult.getThrowable().orElse(null))));
+                    break;
+                case ABORTED:
+                    notifyListener(listener -> listener.testAssumptionFailure(FailureHelper.convert(
+                            testIdentifier, testExecutionResult.getThrowable().orElse(null))));
+                    break;
+                case SUCCESSFUL:
+                    break;
             }
-            withDescription(testIdentifier, runListener::testFinished);
+            withDescription(testIdentifier, RunListener::testFinished);
         } else {
-            withDescription(testIdentifier, runListener::testSuiteFinished);
+            withDescription(testIdentifier, RunListener::testSuiteFinished);
         }
     }
 
@@ -125,9 +133,24 @@ public class RunListenerAdapter implements TestExecutionListener {
         summarizer.reportingEntryPublished(testIdentifier, entry);
     }
 
-    private static void withDescription(
-            TestIdentifier testIdentifier, ExceptionHandlingConsumer<Description, Exception> action) {
-        toDescription(testIdentifier).ifPresent(action);
+    private void withDescription(TestIdentifier testIdentifier, DescriptionEvent event) {
+        toDescription(testIdentifier)
+                .ifPresent(description -> notifyListener(listener -> event.accept(listener, description)));
+    }
+
+    private void notifyListener(ExceptionHandlingConsumer<RunListener, Exception> event) {
+        if (threadSafe) {
+            event.accept(runListener);
+        } else {
+            synchronized (runListener) {
+                event.accept(runListener);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface DescriptionEvent {
+        void accept(RunListener listener, Description description) throws Exception;
     }
 
     private interface ExceptionHandlingConsumer<S, E extends Exception> extends Consumer<S> {
@@ -43,16 +43,37 @@ public class TestEngineTracker implements Closeable {
 
     private final BundleTracker<AtomicReference<Set<TestEngine>>> tracker;
 
+    private volatile AvailableTestEngines availableTestEngines;
+
     public TestEngineTracker(BundleContext bundleContext) {
         tracker = new BundleTracker<>(bundleContext, Bundle.ACTIVE, new Customizer());
         tracker.open();
     }
 
+    /** Return the test engines of all active bundles, which are only
+     *  collected again if the tracked bundles changed.
+     */
     public TestEngine[] getAvailableTestEngines() {
-        return tracker.getTracked().values().stream()
-                .map(AtomicReference::get)
-                .flatMap(Collection::stream)
-                .toArray(TestEngine[]::new);
+        AvailableTestEngines available = availableTestEngines;
+        // read the tracking count first, a concurrent change causes another update on the next call
+        final int trackingCount = getTrackingCount();
+        if (available == null || available.trackingCount != trackingCount) {
+            available = new AvailableTestEngines(
+                    trackingCount,
+                    tracker.getTracked().values().stream()
+                            .map(AtomicReference::get)
+                            .flatMap(Collection::stream)
+                            .toArray(TestEngine[]::new));
+            availableTestEngines = available;
+        }
+        return available.testEngines.clone();
+    }
+
+    /** Return a count that changes whenever the tracked bundles, and thus
+     *  possibly the available test engines, change.
+     */
+    public int getTrackingCount() {
+        return tracker.getTrackingCount();
     }
 
     @Override
@@ -60,6 +81,18 @@ public class TestEngineTracker implements Closeable {
         tracker.close();
     }
 
+    private static class AvailableTestEngines {
+
+        private final int trackingCount;
+
+        private final TestEngine[] testEngines;
+
+        AvailableTestEngines(int trackingCount, TestEngine[] testEngines) {
+            this.trackingCount = trackingCount;
+            this.testEngines = testEngines;
+        }
+    }
+
     private static class Customizer implements BundleTrackerCustomizer<AtomicReference<Set<TestEngine>>> {
 
         @Override
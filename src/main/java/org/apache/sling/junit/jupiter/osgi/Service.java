@@ -51,6 +51,10 @@ import org.osgi.framework.Filter;
  * When used on a method parameter, the specified service is made available for injection for exactly
  * that parameter. In this case, the {@link #value() service type} need not be specified, it can
  * be inferred from the parameter's type. However, it may still be useful to specify a filter expression.
+ * <br>
+ * Services that are registered shortly after the test starts, like right after a deployment, can be
+ * waited for by specifying a {@link #timeout() timeout}, or a default timeout with the
+ * {@value #DEFAULT_TIMEOUT_PROPERTY_NAME} configuration parameter.
  *
  * @see ServiceCardinality
  */
@@ -60,6 +64,12 @@ import org.osgi.framework.Filter;
 @Inherited
 public @interface Service {
 
+    /**
+     * Name of the JUnit Platform configuration parameter that sets the default {@link #timeout() timeout}
+     * in milliseconds for all {@code @Service} annotations that do not specify one. Defaults to 0.
+     */
+    String DEFAULT_TIMEOUT_PROPERTY_NAME = "sling.junit.jupiter.osgi.service.timeout.default";
+
     /**
      * The type of the service to be injected.
      * <br>
@@ -85,4 +95,25 @@ public @interface Service {
      * @see ServiceCardinality
      */
     ServiceCardinality cardinality() default ServiceCardinality.AUTO;
+
+    /**
+     * The maximum time in milliseconds to wait for the service to become available before
+     * the parameter is resolved. For multiple references, the wait ends as soon as the
+     * {@link #minimumCount() minimum count} of services is available.
+     * <br>
+     * A negative value stands for the default timeout configured with the
+     * {@value #DEFAULT_TIMEOUT_PROPERTY_NAME} configuration parameter, 0 for no wait.
+     *
+     * @return the timeout in milliseconds
+     */
+    long timeout() default -1;
+
+    /**
+     * The number of services to wait for within the {@link #timeout() timeout}, for multiple
+     * references only. Whether injection fails if no service is available after the wait is
+     * still controlled by the {@link #cardinality() cardinality}.
+     *
+     * @return the minimum number of services to wait for
+     */
+    int minimumCount() default 1;
 }
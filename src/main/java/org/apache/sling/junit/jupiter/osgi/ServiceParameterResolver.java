@@ -19,6 +19,7 @@
 package org.apache.sling.junit.jupiter.osgi;
 
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Parameter;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.Arrays;
@@ -28,10 +29,13 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import org.apache.sling.junit.impl.cache.ClassMetadataCache;
 import org.apache.sling.junit.jupiter.osgi.impl.AbstractTypeBasedParameterResolver;
+import org.apache.sling.junit.jupiter.osgi.impl.ServiceResolutionEvents;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.extension.ExtensionContext;
@@ -46,20 +50,31 @@ import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/** Resolves parameters annotated with {@link Service}. The service trackers are
+ *  kept in the store of the root extension context, so that all tests of a
+ *  test run share them, and are closed when the test run is finished. The service
+ *  type and annotation of each parameter are only looked up once per test class.
+ */
 class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
 
+    private static final Logger log = LoggerFactory.getLogger(ServiceParameterResolver.class);
+
     private static final ExtensionContext.Namespace NAMESPACE =
             ExtensionContext.Namespace.create(ServiceParameterResolver.class);
 
+    private static final ClassMetadataCache<ParameterKey, Optional<ServiceParameter>> SERVICE_PARAMETERS =
+            new ClassMetadataCache<>(1024, ParameterKey::testClass);
+
     @Override
     protected boolean supportsParameter(
             @NotNull ParameterContext parameterContext,
             @NotNull ExtensionContext extensionContext,
             @NotNull Type resolvedParameterType) {
-        final Optional<Service> service = computeServiceType(resolvedParameterType)
-                .flatMap(serviceType -> findServiceAnnotation(parameterContext, extensionContext, serviceType));
-        return service.isPresent();
+        return findServiceParameter(parameterContext, extensionContext, resolvedParameterType)
+                .isPresent();
     }
 
     @Override
@@ -67,19 +82,63 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
             @NotNull ParameterContext parameterContext,
             @NotNull ExtensionContext extensionContext,
             @NotNull Type resolvedParameterType) {
-        final ServiceHolder.Key key = computeServiceType(resolvedParameterType)
-                .flatMap(serviceType -> findServiceAnnotation(parameterContext, extensionContext, serviceType)
-                        .map(ann -> toKey(serviceType, ann)))
-                .orElseThrow(() -> new ParameterResolutionException("Cannot handle type " + resolvedParameterType));
-
-        final ServiceHolder serviceHolder = extensionContext
-                .getStore(NAMESPACE)
-                .getOrComputeIfAbsent(key, serviceHolderFactory(extensionContext), ServiceHolder.class);
-        return isMultiple(resolvedParameterType) ? serviceHolder.getServices() : serviceHolder.getService();
+        final Object event = ServiceResolutionEvents.begin();
+        String filter = null;
+        try {
+            final ServiceHolder.Key key = findServiceParameter(
+                            parameterContext, extensionContext, resolvedParameterType)
+                    .map(serviceParameter -> toKey(
+                            getBundleContext(extensionContext),
+                            serviceParameter.serviceType,
+                            serviceParameter.serviceAnnotation))
+                    .orElseThrow(() -> new ParameterResolutionException("Cannot handle type " + resolvedParameterType));
+            filter = key.filter();
+
+            final ExtensionContext.Store rootStore = extensionContext.getRoot().getStore(NAMESPACE);
+            final TrackerCounter trackerCounter = rootStore.getOrComputeIfAbsent(
+                    TrackerCounter.class, type -> new TrackerCounter(), TrackerCounter.class);
+            final ServiceHolder serviceHolder =
+                    rootStore.getOrComputeIfAbsent(key, serviceHolderFactory(trackerCounter), ServiceHolder.class);
+            final long timeout = getTimeout(extensionContext, key);
+            return isMultiple(resolvedParameterType)
+                    ? serviceHolder.getServices(timeout)
+                    : serviceHolder.getService(timeout);
+        } finally {
+            ServiceResolutionEvents.commit(event, resolvedParameterType.getTypeName(), filter);
+        }
+    }
+
+    @NotNull
+    private static Optional<ServiceParameter> findServiceParameter(
+            @NotNull ParameterContext parameterContext,
+            @NotNull ExtensionContext extensionContext,
+            @NotNull Type resolvedParameterType) {
+        return SERVICE_PARAMETERS.get(
+                new ParameterKey(extensionContext.getRequiredTestClass(), parameterContext.getParameter()),
+                key -> computeServiceType(resolvedParameterType)
+                        .flatMap(serviceType -> findServiceAnnotation(parameterContext, extensionContext, serviceType)
+                                .map(ann -> new ServiceParameter(serviceType, ann))));
+    }
+
+    private static ServiceHolder.Key toKey(
+            BundleContext bundleContext, Class<?> serviceType, Service serviceAnnotation) {
+        return new ServiceHolder.Key(bundleContext, serviceType, serviceAnnotation);
     }
 
-    private static ServiceHolder.Key toKey(Class<?> serviceType, Service serviceAnnotation) {
-        return new ServiceHolder.Key(serviceType, serviceAnnotation);
+    private static long getTimeout(@NotNull ExtensionContext extensionContext, @NotNull ServiceHolder.Key key) {
+        if (key.timeout() >= 0) {
+            return key.timeout();
+        }
+        final Optional<String> defaultTimeout =
+                extensionContext.getConfigurationParameter(Service.DEFAULT_TIMEOUT_PROPERTY_NAME);
+        try {
+            return defaultTimeout.map(String::trim).map(Long::parseLong).orElse(0L);
+        } catch (NumberFormatException e) {
+            throw new ParameterResolutionException(
+                    "Invalid value of configuration parameter " + Service.DEFAULT_TIMEOUT_PROPERTY_NAME + ": \""
+                            + defaultTimeout.orElse(null) + "\"",
+                    e);
+        }
     }
 
     @NotNull
@@ -109,8 +168,12 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
     }
 
     @NotNull
-    private static Function<ServiceHolder.Key, ServiceHolder> serviceHolderFactory(ExtensionContext extensionContext) {
-        return key -> new ServiceHolder(getBundleContext(extensionContext), key);
+    private static Function<ServiceHolder.Key, ServiceHolder> serviceHolderFactory(
+            @NotNull TrackerCounter trackerCounter) {
+        return key -> {
+            trackerCounter.increment();
+            return new ServiceHolder(key);
+        };
     }
 
     @NotNull
@@ -174,16 +237,75 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
         return false;
     }
 
+    /** A parameter of a test class, whose resolved type depends on the test class */
+    private static class ParameterKey {
+
+        private final Class<?> testClass;
+
+        private final Parameter parameter;
+
+        ParameterKey(@NotNull Class<?> testClass, @NotNull Parameter parameter) {
+            this.testClass = testClass;
+            this.parameter = parameter;
+        }
+
+        Class<?> testClass() {
+            return testClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ParameterKey)) {
+                return false;
+            }
+            final ParameterKey other = (ParameterKey) o;
+            return testClass == other.testClass && parameter.equals(other.parameter);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(testClass, parameter);
+        }
+    }
+
+    /** The service type and the matching {@link Service} annotation of a parameter */
+    private static class ServiceParameter {
+
+        private final Class<?> serviceType;
+
+        private final Service serviceAnnotation;
+
+        ServiceParameter(@NotNull Class<?> serviceType, @NotNull Service serviceAnnotation) {
+            this.serviceType = serviceType;
+            this.serviceAnnotation = serviceAnnotation;
+        }
+    }
+
+    /** Counts the service trackers opened during a test run */
+    private static class TrackerCounter implements ExtensionContext.Store.CloseableResource {
+
+        private final AtomicInteger openedTrackers = new AtomicInteger();
+
+        void increment() {
+            openedTrackers.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            log.debug("Opened {} service trackers for @Service parameters during the test run", openedTrackers.get());
+        }
+    }
+
     private static class ServiceHolder implements ExtensionContext.Store.CloseableResource {
 
         private final Key key;
 
-        private final ServiceTracker<?, ?> serviceTracker;
+        private final SortingServiceTracker<?> serviceTracker;
 
-        private ServiceHolder(@NotNull BundleContext bundleContext, @NotNull Key key) {
+        private ServiceHolder(@NotNull Key key) {
             this.key = key;
-            final Filter filter = createFilter(bundleContext, key.type(), key.filter());
-            serviceTracker = new SortingServiceTracker<>(bundleContext, filter);
+            final Filter filter = createFilter(key.bundleContext(), key.type(), key.filter());
+            serviceTracker = new SortingServiceTracker<>(key.bundleContext(), filter);
             serviceTracker.open();
         }
 
@@ -193,15 +315,28 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
         }
 
         @Nullable
-        public Object getService() throws ParameterResolutionException {
-            final Object service = serviceTracker.getService();
+        public Object getService(long timeout) throws ParameterResolutionException {
+            final Object service;
+            try {
+                service = timeout > 0 ? serviceTracker.waitForService(timeout) : serviceTracker.getService();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ParameterResolutionException("Interrupted while waiting for service " + key.type(), e);
+            }
             return checkCardinality(service, false);
         }
 
         @NotNull
-        public List<Object> getServices() throws ParameterResolutionException {
+        public List<Object> getServices(long timeout) throws ParameterResolutionException {
+            if (timeout > 0) {
+                try {
+                    serviceTracker.waitForServices(key.minimumCount(), timeout);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ParameterResolutionException("Interrupted while waiting for services " + key.type(), e);
+                }
+            }
             @Nullable final Object[] services = serviceTracker.getServices();
-            ;
             return Optional.ofNullable(checkCardinality(services, true))
                     .map(Arrays::asList)
                     .orElseGet(Collections::emptyList);
@@ -256,10 +391,53 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
         }
 
         private static class SortingServiceTracker<T> extends ServiceTracker<T, T> {
+
+            // a service is tracked right after addingService returns, waiting
+            // threads recheck shortly after if it is not tracked yet
+            private static final long RECHECK_INTERVAL_MSEC = 10;
+
+            private final Object serviceAdded = new Object();
+
+            // guarded by serviceAdded
+            private int addedServices;
+
             public SortingServiceTracker(@NotNull BundleContext bundleContext, @NotNull Filter filter) {
                 super(bundleContext, filter, null);
             }
 
+            @Override
+            public T addingService(ServiceReference<T> reference) {
+                final T service = super.addingService(reference);
+                if (service != null) {
+                    synchronized (serviceAdded) {
+                        addedServices++;
+                        serviceAdded.notifyAll();
+                    }
+                }
+                return service;
+            }
+
+            @Override
+            public void removedService(ServiceReference<T> reference, T service) {
+                synchronized (serviceAdded) {
+                    addedServices--;
+                }
+                super.removedService(reference, service);
+            }
+
+            /** Wait until at least minimumCount services are tracked or the timeout expires */
+            void waitForServices(int minimumCount, long timeout) throws InterruptedException {
+                final long deadline = System.currentTimeMillis() + timeout;
+                synchronized (serviceAdded) {
+                    long remaining = timeout;
+                    while (size() < minimumCount && remaining > 0) {
+                        serviceAdded.wait(
+                                addedServices >= minimumCount ? Math.min(remaining, RECHECK_INTERVAL_MSEC) : remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                }
+            }
+
             @Override
             @Nullable
             public ServiceReference<T>[] getServiceReferences() {
@@ -272,17 +450,29 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
             }
         }
 
+        /** Identifies the trackers that can be shared, the BundleContext stands for the bundle of the test class */
         private static class Key {
 
+            private final BundleContext bundleContext;
+
             private final Class<?> serviceType;
 
             private final Service serviceAnnotation;
 
-            public Key(@NotNull Class<?> serviceType, @NotNull Service serviceAnnotation) {
+            public Key(
+                    @NotNull BundleContext bundleContext,
+                    @NotNull Class<?> serviceType,
+                    @NotNull Service serviceAnnotation) {
+                this.bundleContext = bundleContext;
                 this.serviceType = serviceType;
                 this.serviceAnnotation = serviceAnnotation;
             }
 
+            @NotNull
+            public BundleContext bundleContext() {
+                return bundleContext;
+            }
+
             @NotNull
             public Class<?> type() {
                 return serviceType;
@@ -298,6 +488,14 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
                 return serviceAnnotation.cardinality();
             }
 
+            public long timeout() {
+                return serviceAnnotation.timeout();
+            }
+
+            public int minimumCount() {
+                return serviceAnnotation.minimumCount();
+            }
+
             @Override
             public boolean equals(Object o) {
                 if (!(o instanceof Key)) {
@@ -305,13 +503,14 @@ class ServiceParameterResolver extends AbstractTypeBasedParameterResolver {
                 }
                 Key key = (Key) o;
                 return this == o
-                        || (Objects.equals(serviceType, key.serviceType)
+                        || (bundleContext == key.bundleContext
+                                && Objects.equals(serviceType, key.serviceType)
                                 && Objects.equals(serviceAnnotation, key.serviceAnnotation));
             }
 
             @Override
             public int hashCode() {
-                return Objects.hash(serviceType, serviceAnnotation);
+                return Objects.hash(System.identityHashCode(bundleContext), serviceType, serviceAnnotation);
             }
         }
     }
@@ -22,21 +22,25 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.util.Map;
 
+import org.apache.sling.junit.impl.cache.ClassMetadataCache;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolver;
 
-import static org.apache.sling.junit.jupiter.osgi.impl.ReflectionHelper.determineTypeArguments;
-
 /**
  * Abstract {@link ParameterResolver} class that resolves any type-arguments in the parameter's type
  * to their actual type and provides this {@code resolvedParameterType} to the abstract methods
  * {@link #supportsParameter(ParameterContext, ExtensionContext, Type)} and
  * {@link #resolveParameter(ParameterContext, ExtensionContext, Type)}.
+ * <br>
+ * The type-arguments of each test class are only determined once and cached.
  */
 public abstract class AbstractTypeBasedParameterResolver implements ParameterResolver {
 
+    private static final ClassMetadataCache<Class<?>, Map<TypeVariable<?>, Type>> TYPE_ARGUMENTS =
+            new ClassMetadataCache<>(256, testClass -> testClass);
+
     protected abstract boolean supportsParameter(
             @NotNull ParameterContext parameterContext,
             @NotNull ExtensionContext extensionContext,
@@ -63,8 +67,8 @@ public abstract class AbstractTypeBasedParameterResolver implements ParameterRes
     private static Type getTypeOfParameter(ParameterContext parameterContext, ExtensionContext extensionContext) {
         Type type = parameterContext.getParameter().getParameterizedType();
         if (type instanceof TypeVariable) {
-            final Map<TypeVariable<?>, Type> typeVariableTypeMap =
-                    determineTypeArguments(extensionContext.getRequiredTestClass());
+            final Map<TypeVariable<?>, Type> typeVariableTypeMap = TYPE_ARGUMENTS.get(
+                    extensionContext.getRequiredTestClass(), ReflectionHelper::determineTypeArguments);
             return typeVariableTypeMap.getOrDefault(type, type);
         } else {
             return type;
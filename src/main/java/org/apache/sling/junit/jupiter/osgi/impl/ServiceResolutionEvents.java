@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.jupiter.osgi.impl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Hook for recording the resolution of service parameters, like as Java Flight Recorder events,
+ * without depending on the test runner. Nothing is recorded unless the test runner sets a {@link Recorder}.
+ */
+public final class ServiceResolutionEvents {
+
+    /**
+     * Records the resolution of service parameters
+     */
+    public interface Recorder {
+        /**
+         * @return the event to pass to {@link #commit}, or null if nothing is recorded
+         */
+        @Nullable
+        Object begin();
+
+        void commit(@NotNull Object event, @NotNull String serviceType, @Nullable String filter);
+    }
+
+    private static volatile Recorder recorder;
+
+    private ServiceResolutionEvents() {}
+
+    /**
+     * @param recorder the recorder to use, or null to stop recording
+     */
+    public static void setRecorder(@Nullable Recorder recorder) {
+        ServiceResolutionEvents.recorder = recorder;
+    }
+
+    /**
+     * Begin the resolution of a service parameter
+     *
+     * @return the event to pass to {@link #commit}, or null if nothing is recorded
+     */
+    @Nullable
+    public static Object begin() {
+        final Recorder r = recorder;
+        return r == null ? null : r.begin();
+    }
+
+    /**
+     * End the resolution of a service parameter, does nothing if the event is null
+     *
+     * @param event as returned by {@link #begin()}
+     * @param serviceType the type of the resolved parameter
+     * @param filter the filter of the resolved service, if known
+     */
+    public static void commit(@Nullable Object event, @NotNull String serviceType, @Nullable String filter) {
+        final Recorder r = recorder;
+        if (event != null && r != null) {
+            r.commit(event, serviceType, filter);
+        }
+    }
+}
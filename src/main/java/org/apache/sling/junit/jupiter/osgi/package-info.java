@@ -16,7 +16,7 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-@Version("1.1.0")
+@Version("1.2.0")
 package org.apache.sling.junit.jupiter.osgi;
 
 import org.osgi.annotation.versioning.Version;
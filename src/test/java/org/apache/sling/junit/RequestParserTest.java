@@ -18,15 +18,18 @@
  */
 package org.apache.sling.junit;
 
+import java.util.Collections;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import static org.apache.commons.lang3.StringUtils.EMPTY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 public class RequestParserTest {
@@ -59,6 +62,15 @@ public class RequestParserTest {
         assertEquals(isValid, parser.acceptTestName(testName), String.format("accept test named \"%s\"", testName));
     }
 
+    @Test
+    void testParameters() {
+        final RequestParser parser =
+                new RequestParser("/org.example.html", Collections.singletonMap("parallel", "true"));
+        assertEquals("true", parser.getParameter("parallel"));
+        assertNull(parser.getParameter("other"));
+        assertNull(new RequestParser("/org.example.html").getParameter("parallel"));
+    }
+
     @SuppressWarnings("unused") // test arguments
     static Stream<Arguments> acceptTestNameArguments() {
         return concatStreams(
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.sling.junit.annotations.TestReference;
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+
+public class AnnotationsProcessorTest {
+
+    private final Runnable serviceA = () -> {};
+
+    private final Runnable serviceB = () -> {};
+
+    private BundleContext bundleContext;
+
+    private AnnotationsProcessor processor;
+
+    @Before
+    public void setup() {
+        bundleContext = MockOsgi.newBundleContext();
+        registerService(serviceA, "a");
+        registerService(serviceB, "b");
+        processor = new AnnotationsProcessor();
+        processor.activate(MockOsgi.newComponentContext(bundleContext));
+    }
+
+    private void registerService(Runnable service, String name) {
+        final Dictionary<String, Object> props = new Hashtable<>();
+        props.put("name", name);
+        bundleContext.registerService(Runnable.class, service, props);
+    }
+
+    @After
+    public void cleanup() {
+        processor.deactivate(null);
+        MockOsgi.shutdown(bundleContext);
+    }
+
+    @Test
+    public void testInjectsFieldsOfClassAndSuperclasses() throws Exception {
+        final SubTest test = (SubTest) processor.process(new SubTest());
+        assertThat(((BaseTest) test).baseService, sameInstance(serviceA));
+        assertThat(test.service, sameInstance(serviceB));
+        assertThat(test.bundleContext, sameInstance(bundleContext));
+        assertThat(test.notInjected, nullValue());
+        processor.cleanupTest(test);
+    }
+
+    @Test
+    public void testInjectsEachTestObject() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final SubTest test = (SubTest) processor.process(new SubTest());
+            assertThat(test.service, sameInstance(serviceB));
+            processor.cleanupTest(test);
+        }
+    }
+
+    @Test
+    public void testServiceGettersSharedUntilLastTestIsCleanedUp() throws Exception {
+        final SubTest first = (SubTest) processor.process(new SubTest());
+        final SubTest second = (SubTest) processor.process(new SubTest());
+        assertThat(processor.getServiceGetterCount(), is(3));
+
+        processor.cleanupTest(first);
+        assertThat(processor.getServiceGetterCount(), is(3));
+        processor.cleanupTest(second);
+        assertThat(processor.getServiceGetterCount(), is(0));
+    }
+
+    @Test
+    public void testServiceGettersReleasedIfProcessingFails() throws Exception {
+        final InvalidTargetTest test = new InvalidTargetTest();
+        assertThrows(IllegalArgumentException.class, () -> processor.process(test));
+        assertThat(processor.getServiceGetterCount(), is(0));
+
+        // nothing left to clean up
+        processor.cleanupTest(test);
+        assertThat(processor.getServiceGetterCount(), is(0));
+    }
+
+    public static class BaseTest {
+        @TestReference(target = "(name=a)")
+        private Runnable baseService;
+    }
+
+    public static class SubTest extends BaseTest {
+        @TestReference(target = "(name=b)")
+        private Runnable service;
+
+        @TestReference
+        BundleContext bundleContext;
+
+        Runnable notInjected;
+    }
+
+    public static class InvalidTargetTest extends BaseTest {
+        @TestReference(target = "(name=")
+        private Runnable service;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.junit.Renderer;
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.apache.sling.junit.TestRun;
+import org.apache.sling.junit.TestSelector;
+import org.apache.sling.junit.TestsManager;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+import org.mockito.InOrder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AsyncTestRunsTest {
+
+    private static final Description TEST = Description.createTestDescription("org.example.ATest", "test");
+
+    @Test
+    public void testRenderRecordedResults() throws Exception {
+        final TestsManager testsManager = mock(TestsManager.class);
+        doAnswer(invocation -> {
+                    final Renderer renderer = invocation.getArgument(0);
+                    renderer.info("note", "running");
+                    renderer.getRunListener().testStarted(TEST);
+                    SlingTestContextProvider.createContext().output().put("answer", 42);
+                    renderer.getRunListener().testFinished(TEST);
+                    SlingTestContextProvider.deleteContext();
+                    return null;
+                })
+                .when(testsManager)
+                .executeTests(any(Renderer.class), any());
+
+        final AsyncTestRuns runs = new AsyncTestRuns(10, TimeUnit.HOURS.toMillis(1), 10, 60);
+        try {
+            final AsyncTestRun run = runs.get(runs.submit(testsManager, mock(TestSelector.class)));
+            assertThat(run, notNullValue());
+            awaitDone(run);
+            assertThat(run.getStatus(), is(TestRun.Status.FINISHED));
+
+            final RunListener listener = mock(RunListener.class);
+            final Renderer renderer = mock(Renderer.class);
+            when(renderer.getRunListener()).thenReturn(listener);
+            doAnswer(invocation -> {
+                        assertThat(
+                                SlingTestContextProvider.getContext().output().get("answer"), is(42));
+                        return null;
+                    })
+                    .when(listener)
+                    .testFinished(TEST);
+            run.render(renderer);
+
+            final InOrder inOrder = inOrder(renderer, listener);
+            inOrder.verify(renderer).info("note", "running");
+            inOrder.verify(listener).testStarted(TEST);
+            inOrder.verify(listener).testFinished(TEST);
+            assertThat("test context is removed after rendering", SlingTestContextProvider.hasContext(), is(false));
+        } finally {
+            runs.close();
+        }
+    }
+
+    @Test
+    public void testFailedRun() throws Exception {
+        final TestsManager testsManager = mock(TestsManager.class);
+        doThrow(new IllegalStateException("boom")).when(testsManager).executeTests(any(Renderer.class), any());
+
+        final AsyncTestRuns runs = new AsyncTestRuns(10, TimeUnit.HOURS.toMillis(1), 10, 60);
+        try {
+            final AsyncTestRun run = runs.get(runs.submit(testsManager, null));
+            awaitDone(run);
+            assertThat(run.getStatus(), is(TestRun.Status.FAILED));
+        } finally {
+            runs.close();
+        }
+    }
+
+    @Test
+    public void testEvictDoneRuns() throws Exception {
+        final TestsManager testsManager = mock(TestsManager.class);
+        final AsyncTestRuns runs = new AsyncTestRuns(1, TimeUnit.HOURS.toMillis(1), 10, 60);
+        try {
+            final String first = runs.submit(testsManager, null);
+            awaitDone(runs.get(first));
+            final String second = runs.submit(testsManager, null);
+            awaitDone(runs.get(second));
+
+            assertThat("only the most recent done run is kept", runs.get(first), nullValue());
+            assertThat(runs.get(second), notNullValue());
+        } finally {
+            runs.close();
+        }
+    }
+
+    @Test
+    public void testEvictOldRuns() throws Exception {
+        final CountDownLatch executing = new CountDownLatch(1);
+        final TestsManager testsManager = mock(TestsManager.class);
+        doAnswer(invocation -> executing.await(10, TimeUnit.SECONDS))
+                .when(testsManager)
+                .executeTests(any(Renderer.class), any());
+        final AsyncTestRuns runs = new AsyncTestRuns(10, -1, 10, 60);
+        try {
+            final String id = runs.submit(testsManager, null);
+            final AsyncTestRun run = runs.get(id);
+            assertThat("test runs are not evicted before they are done", run, notNullValue());
+            executing.countDown();
+            awaitDone(run);
+            assertThat(runs.get(id), nullValue());
+        } finally {
+            runs.close();
+        }
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        final CountDownLatch executing = new CountDownLatch(1);
+        final TestsManager testsManager = mock(TestsManager.class);
+        doAnswer(invocation -> executing.await(10, TimeUnit.SECONDS))
+                .when(testsManager)
+                .executeTests(any(Renderer.class), any());
+        final AsyncTestRuns runs = new AsyncTestRuns(10, TimeUnit.HOURS.toMillis(1), 1, 42);
+        try {
+            final String running = runs.submit(testsManager, null);
+            final String queued = runs.submit(testsManager, null);
+            final TestsManager.TooManyTestRunsException e =
+                    assertThrows(TestsManager.TooManyTestRunsException.class, () -> runs.submit(testsManager, null));
+            assertThat(e.getRetryAfterSeconds(), is(42));
+
+            executing.countDown();
+            awaitDone(runs.get(running));
+            awaitDone(runs.get(queued));
+            assertThat("test runs can be submitted again", runs.submit(testsManager, null), notNullValue());
+        } finally {
+            runs.close();
+        }
+    }
+
+    private static void awaitDone(AsyncTestRun run) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!run.isDone() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertThat("test run is done", run.isDone(), is(true));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assume.assumeThat;
+
+public class FlightRecorderEventTest {
+
+    private static final String TEST_EVENT_NAME = "org.apache.sling.junit.Test";
+
+    @Test
+    public void testJfrNotAvailable() {
+        final ClassLoader withoutJfr = new ClassLoader(FlightRecorderEventTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.startsWith("jdk.jfr.")) {
+                    throw new ClassNotFoundException(name);
+                }
+                return super.loadClass(name, resolve);
+            }
+        };
+        assertThat(FlightRecorderEvent.Jfr.create(withoutJfr), nullValue());
+    }
+
+    @Test
+    public void testNotEnabled() {
+        // no recording enables the event type
+        assertThat(FlightRecorderEvent.TEST.begin(), nullValue());
+        FlightRecorderEvent.TEST.commit(null, "org.example.ATest.test", "passed");
+    }
+
+    @Test
+    public void testRecordedEvent() throws Exception {
+        final ClassLoader loader = ClassLoader.getSystemClassLoader();
+        assumeThat("Java Flight Recorder API is available", FlightRecorderEvent.Jfr.create(loader), notNullValue());
+
+        // the jdk.jfr API is not available when compiling for Java 8
+        final Class<?> recordingClass = Class.forName("jdk.jfr.Recording", true, loader);
+        final Object recording = recordingClass.getConstructor().newInstance();
+        final Path file = Files.createTempFile(getClass().getSimpleName(), ".jfr");
+        try {
+            recordingClass.getMethod("enable", String.class).invoke(recording, TEST_EVENT_NAME);
+            recordingClass.getMethod("start").invoke(recording);
+            final Object event = FlightRecorderEvent.TEST.begin();
+            assertThat(event, notNullValue());
+            FlightRecorderEvent.TEST.commit(event, "org.example.ATest.test", "passed");
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file);
+
+            final List<?> recordedEvents = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile", true, loader)
+                    .getMethod("readAllEvents", Path.class)
+                    .invoke(null, file);
+            Object recorded = null;
+            for (Object recordedEvent : recordedEvents) {
+                final Object eventType = invoke(recordedEvent, "getEventType");
+                if (TEST_EVENT_NAME.equals(invoke(eventType, "getName"))) {
+                    recorded = recordedEvent;
+                }
+            }
+            assertThat(recorded, notNullValue());
+            assertThat(invoke(recorded, "getString", "test"), is("org.example.ATest.test"));
+            assertThat(invoke(recorded, "getString", "result"), is("passed"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static Object invoke(Object target, String methodName, String... args) throws Exception {
+        final Class<?>[] parameterTypes = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            parameterTypes[i] = String.class;
+        }
+        final Method method = target.getClass().getMethod(methodName, parameterTypes);
+        return method.invoke(target, (Object[]) args);
+    }
+}
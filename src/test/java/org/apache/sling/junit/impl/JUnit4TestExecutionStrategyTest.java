@@ -18,15 +18,28 @@
  */
 package org.apache.sling.junit.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.sling.junit.TestSelector;
 import org.apache.sling.junit.sampletests.JUnit4SlingJUnit;
 import org.junit.Test;
+import org.junit.runner.Description;
 import org.junit.runner.Request;
 import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -61,4 +74,78 @@ public class JUnit4TestExecutionStrategyTest {
 
         strategy.close();
     }
+
+    @Test
+    public void testParallelExecution() throws Exception {
+        final TestsManagerImpl testsManager = mock(TestsManagerImpl.class);
+        when(testsManager.createTestRequest(any(), any(), any())).thenAnswer(invocation -> invocation
+                .<Function<Class<?>[], Request>>getArgument(2)
+                .apply(new Class<?>[] {ParallelA.class, ParallelB.class}));
+        final TestSelector selector = mock(TestSelector.class);
+        when(selector.getParameter(TestExecutionStrategy.PARALLEL_PARAM)).thenReturn("true");
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+        final RunListener recorder = new RunListener() {
+            @Override
+            public void testSuiteStarted(Description description) {
+                events.add("suiteStarted " + description.getClassName());
+            }
+
+            @Override
+            public void testStarted(Description description) {
+                events.add("started " + description.getClassName());
+            }
+
+            @Override
+            public void testFinished(Description description) {
+                events.add("finished " + description.getClassName());
+            }
+
+            @Override
+            public void testSuiteFinished(Description description) {
+                events.add("suiteFinished " + description.getClassName());
+            }
+
+            @Override
+            public void testFailure(Failure failure) {
+                events.add("failure " + failure);
+            }
+        };
+
+        final JUnit4TestExecutionStrategy strategy = new JUnit4TestExecutionStrategy(testsManager, false, 2);
+        try {
+            strategy.execute(selector, new TestContextRunListenerWrapper(new SerializingRunListener(recorder)));
+        } finally {
+            strategy.close();
+        }
+
+        // both test classes must run concurrently to pass the barrier
+        assertThat(events, not(hasItem(startsWith("failure"))));
+        // and the events of each test class are delivered without interleaving
+        for (Class<?> testClass : new Class<?>[] {ParallelA.class, ParallelB.class}) {
+            final int start = events.indexOf("suiteStarted " + testClass.getName());
+            assertThat(
+                    events.subList(start, start + 4),
+                    contains(
+                            "suiteStarted " + testClass.getName(),
+                            "started " + testClass.getName(),
+                            "finished " + testClass.getName(),
+                            "suiteFinished " + testClass.getName()));
+        }
+    }
+
+    private static final CyclicBarrier BARRIER = new CyclicBarrier(2);
+
+    public static class ParallelA {
+        @Test
+        public void awaitOther() throws Exception {
+            BARRIER.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    public static class ParallelB {
+        @Test
+        public void awaitOther() throws Exception {
+            BARRIER.await(10, TimeUnit.SECONDS);
+        }
+    }
 }
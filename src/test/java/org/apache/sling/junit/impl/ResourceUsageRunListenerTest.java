@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+public class ResourceUsageRunListenerTest {
+
+    private static final Description TEST = Description.createTestDescription("org.example.ATest", "test");
+
+    @Test
+    public void testMeasurementsInContextOutput() throws Exception {
+        final Map<String, Object> output = new HashMap<>();
+        final TestContextRunListenerWrapper wrapper =
+                new TestContextRunListenerWrapper(new ResourceUsageRunListener(new RunListener() {
+                    @Override
+                    public void testFinished(Description description) {
+                        output.putAll(SlingTestContextProvider.getContext().output());
+                    }
+                }));
+
+        wrapper.testRunStarted(Description.createSuiteDescription("classes"));
+        wrapper.testStarted(TEST);
+        final byte[] allocated = new byte[1024 * 1024];
+        wrapper.testFinished(TEST);
+        wrapper.testRunFinished(null);
+
+        assertThat(allocated.length, is(1024 * 1024));
+        assertThat((Long) output.get(ResourceUsageRunListener.CPU_TIME_NSEC), greaterThanOrEqualTo(0L));
+        assertThat((Long) output.get(ResourceUsageRunListener.ALLOCATED_BYTES), greaterThanOrEqualTo(1024L * 1024));
+        assertThat((Long) output.get(ResourceUsageRunListener.GC_COUNT), greaterThanOrEqualTo(0L));
+        assertThat((Long) output.get(ResourceUsageRunListener.GC_TIME_MSEC), greaterThanOrEqualTo(0L));
+        assertThat(output.containsKey(ResourceUsageRunListener.HEAP_DELTA_BYTES), is(true));
+    }
+
+    @Test
+    public void testSuiteUsageReported() throws Exception {
+        final Description suite = Description.createSuiteDescription(ResourceUsageRunListenerTest.class);
+        final List<String> reported = new ArrayList<>();
+        final ResourceUsageRunListener listener =
+                new ResourceUsageRunListener(new RunListener(), (description, usage) -> reported.add(usage));
+
+        listener.testSuiteStarted(suite);
+        listener.testSuiteFinished(suite);
+        listener.testSuiteStarted(Description.createSuiteDescription("no class"));
+        listener.testSuiteFinished(Description.createSuiteDescription("no class"));
+
+        assertThat(reported.size(), is(1));
+        assertThat(reported.get(0), startsWith(ResourceUsageRunListenerTest.class.getName() + ": GC count "));
+    }
+}
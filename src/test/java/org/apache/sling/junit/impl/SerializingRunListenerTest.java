@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SerializingRunListenerTest {
+
+    private final Description A = Description.createSuiteDescription("org.example.ATest");
+
+    private final Description A1 = Description.createTestDescription("org.example.ATest", "a1");
+
+    private final Description A2 = Description.createTestDescription("org.example.ATest", "a2");
+
+    private final Description B = Description.createSuiteDescription("org.example.BTest");
+
+    private final Description B1 = Description.createTestDescription("org.example.BTest", "b1");
+
+    private final List<String> events = new ArrayList<>();
+
+    private final SerializingRunListener listener = new SerializingRunListener(new RunListener() {
+        @Override
+        public void testSuiteStarted(Description description) {
+            events.add("suiteStarted " + description.getDisplayName());
+        }
+
+        @Override
+        public void testSuiteFinished(Description description) {
+            events.add("suiteFinished " + description.getDisplayName());
+        }
+
+        @Override
+        public void testStarted(Description description) {
+            events.add("started " + description.getMethodName());
+        }
+
+        @Override
+        public void testFinished(Description description) {
+            events.add("finished " + description.getMethodName() + " "
+                    + SlingTestContextProvider.getContext().output().get("thread"));
+        }
+    });
+
+    @Test
+    public void testEventsInTestTreeOrder() throws Exception {
+        final Description run = Description.createSuiteDescription("classes");
+        run.addChild(A);
+        run.addChild(B);
+        A.addChild(A1);
+        A.addChild(A2);
+        B.addChild(B1);
+
+        // events of concurrently running test classes and tests, in the order a single thread might see them
+        listener.testRunStarted(run);
+        listener.testSuiteStarted(A);
+        listener.testSuiteStarted(B);
+        listener.testStarted(B1);
+        finish(B1, "b");
+        listener.testStarted(A2);
+        listener.testStarted(A1);
+        listener.execute(B, () -> events.add("info"));
+        listener.testSuiteFinished(B);
+        assertThat(
+                "events of the first suite and test are delivered immediately",
+                events,
+                is(asList("suiteStarted org.example.ATest", "started a2")));
+        finish(A1, "a1");
+        finish(A2, "a2");
+        listener.testSuiteFinished(A);
+        listener.testRunFinished(new Result());
+
+        assertThat(
+                events,
+                is(asList(
+                        "suiteStarted org.example.ATest",
+                        "started a2",
+                        "finished a2 a2",
+                        "started a1",
+                        "finished a1 a1",
+                        "suiteFinished org.example.ATest",
+                        "suiteStarted org.example.BTest",
+                        "started b1",
+                        "finished b1 b",
+                        "info",
+                        "suiteFinished org.example.BTest")));
+        assertThat(SlingTestContextProvider.hasContext(), is(false));
+    }
+
+    /** Finish a test with a test context, which is gone when its event is delivered later */
+    private void finish(Description test, String thread) throws Exception {
+        SlingTestContextProvider.createContext().output().put("thread", thread);
+        try {
+            listener.testFinished(test);
+        } finally {
+            SlingTestContextProvider.deleteContext();
+        }
+    }
+}
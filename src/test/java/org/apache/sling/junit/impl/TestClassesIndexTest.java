@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.Bundle;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestClassesIndexTest {
+
+    private static final String REGEXP = "org.example.*Test";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHitsAndMissesAcrossRestarts() throws Exception {
+        final File file = new File(folder.getRoot(), BundleTestsProvider.INDEX_FILE_NAME);
+        final Bundle bundle = mockBundle(42, 1000L);
+        final Set<String> testClasses = new LinkedHashSet<>(Arrays.asList("org.example.ATest", "org.example.BTest"));
+
+        final TestClassesIndex index = new TestClassesIndex(file);
+        assertThat(index.get(bundle, REGEXP), nullValue());
+        index.put(bundle, REGEXP, testClasses);
+        index.save(bundleId -> true);
+
+        final TestClassesIndex reloaded = new TestClassesIndex(file);
+        assertThat(reloaded.get(bundle, REGEXP), contains("org.example.ATest", "org.example.BTest"));
+        assertThat("changed header is a miss", reloaded.get(bundle, "org.other.*Test"), nullValue());
+        assertThat("updated bundle is a miss", reloaded.get(mockBundle(42, 2000L), REGEXP), nullValue());
+        assertThat(reloaded.getHitCount(), is(1L));
+        assertThat(reloaded.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void testUninstalledBundlesAreDropped() {
+        final File file = new File(folder.getRoot(), BundleTestsProvider.INDEX_FILE_NAME);
+        final Bundle bundle = mockBundle(7, 1000L);
+
+        final TestClassesIndex index = new TestClassesIndex(file);
+        index.put(bundle, REGEXP, new LinkedHashSet<>());
+        index.save(bundleId -> false);
+
+        assertThat(new TestClassesIndex(file).get(bundle, REGEXP), nullValue());
+    }
+
+    @Test
+    public void testWithoutPersistentStorage() {
+        final Bundle bundle = mockBundle(1, 1000L);
+        final TestClassesIndex index = new TestClassesIndex(null);
+        index.put(bundle, REGEXP, new LinkedHashSet<>(Arrays.asList("org.example.ATest")));
+        index.save(bundleId -> true);
+        assertThat(index.get(bundle, REGEXP), contains("org.example.ATest"));
+    }
+
+    private static Bundle mockBundle(long bundleId, long lastModified) {
+        final Bundle bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(bundleId);
+        when(bundle.getLastModified()).thenReturn(lastModified);
+        return bundle;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.junit.SlingTestContextProvider;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.RunListener;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+public class TestContextRunListenerWrapperTest {
+
+    private static final Description TEST = Description.createTestDescription("org.example.ATest", "test");
+
+    @Test
+    public void testTimingsInContextOutput() throws Exception {
+        final Map<String, Object> output = new HashMap<>();
+        final TestContextRunListenerWrapper wrapper = new TestContextRunListenerWrapper(new RunListener() {
+            @Override
+            public void testFinished(Description description) {
+                output.putAll(SlingTestContextProvider.getContext().output());
+            }
+        });
+
+        wrapper.testRunStarted(Description.createSuiteDescription("classes"));
+        wrapper.testStarted(TEST);
+        Thread.sleep(5);
+        wrapper.testFinished(TEST);
+        wrapper.testRunFinished(null);
+
+        assertThat(
+                output.get(TestContextRunListenerWrapper.THREAD_NAME),
+                is(Thread.currentThread().getName()));
+        assertThat(output.get(TestContextRunListenerWrapper.START_OFFSET_USEC), instanceOf(Long.class));
+        assertThat((Long) output.get(TestContextRunListenerWrapper.EXECUTION_TIME_USEC), greaterThanOrEqualTo(5000L));
+        assertThat((Long) output.get(TestContextRunListenerWrapper.EXECUTION_TIME_MSEC), greaterThanOrEqualTo(5L));
+        assertThat(SlingTestContextProvider.hasContext(), is(false));
+    }
+
+    @Test
+    public void testContextForThreadWithoutContext() throws Exception {
+        final Map<String, Object> output = new HashMap<>();
+        final TestContextRunListenerWrapper wrapper = new TestContextRunListenerWrapper(new RunListener() {
+            @Override
+            public void testFinished(Description description) {
+                output.putAll(SlingTestContextProvider.getContext().output());
+            }
+        });
+
+        // like a test running in parallel on another thread than the test run
+        wrapper.testStarted(TEST);
+        wrapper.testFinished(TEST);
+
+        assertThat(output.containsKey(TestContextRunListenerWrapper.EXECUTION_TIME_USEC), is(true));
+        assertThat("context is removed again", SlingTestContextProvider.hasContext(), is(false));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.sling.junit.RequestParser;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class TestNameTrieTest {
+
+    private static final List<String> TEST_NAMES = sorted(
+            "org.example.ATest",
+            "org.example.ATest$Nested",
+            "org.example.ATest.Odd",
+            "org.example.sub.BTest",
+            "org.example.sub.deeper.CTest",
+            "org.examples.DTest",
+            "org.other.ETest",
+            "ToplevelTest");
+
+    @Test
+    public void testResolveMatchesRequestParser() {
+        final TestNameTrie trie = new TestNameTrie(TEST_NAMES);
+        for (String selector : asList(
+                "",
+                "org",
+                "org.example",
+                "org.example.ATest",
+                "org.example.sub",
+                "org.example.sub.deeper.CTest",
+                "org.exam",
+                "org.examples",
+                "ToplevelTest",
+                "org.example.",
+                "does.not.Exist")) {
+            final RequestParser parser = new RequestParser(selector + ".html");
+            final List<String> expected =
+                    TEST_NAMES.stream().filter(parser::acceptTestName).collect(Collectors.toList());
+            assertThat("selector '" + selector + "'", trie.resolve(selector), equalTo(expected));
+        }
+    }
+
+    private static List<String> sorted(String... names) {
+        final List<String> result = new ArrayList<>(asList(names));
+        Collections.sort(result);
+        return Collections.unmodifiableList(result);
+    }
+}
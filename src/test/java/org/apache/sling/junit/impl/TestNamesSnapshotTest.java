@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import org.apache.sling.junit.TestsProvider;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestNamesSnapshotTest {
+
+    @Test
+    public void testSortedNamesAndProviders() {
+        final TestsProvider first = mockProvider("org.example.b.BTest", "org.example.a.ATest");
+        final TestsProvider second = mockProvider("org.example.a.ATest", "org.example.c.CTest");
+
+        final TestNamesSnapshot snapshot = TestNamesSnapshot.create(5, new TestsProvider[] {first, second});
+
+        assertThat(
+                snapshot.getTestNames(), contains("org.example.a.ATest", "org.example.b.BTest", "org.example.c.CTest"));
+        assertThat(snapshot.getProvider("org.example.a.ATest"), sameInstance(first));
+        assertThat(snapshot.getProvider("org.example.c.CTest"), sameInstance(second));
+        assertThat(snapshot.getProvider("org.example.d.DTest"), nullValue());
+    }
+
+    @Test
+    public void testIsCurrent() {
+        final BundleTestsProvider provider = mock(BundleTestsProvider.class);
+        when(provider.getChangeCount()).thenReturn(1L);
+        when(provider.getTestNames()).thenReturn(asList("org.example.ATest"));
+        final TestNamesSnapshot snapshot = TestNamesSnapshot.create(5, new TestsProvider[] {provider});
+
+        assertThat(snapshot.isCurrent(5), is(true));
+        assertThat("providers changed", snapshot.isCurrent(6), is(false));
+
+        when(provider.getChangeCount()).thenReturn(2L);
+        assertThat("tests of provider changed", snapshot.isCurrent(5), is(false));
+    }
+
+    @Test
+    public void testOtherProviderIsNeverCurrent() {
+        // lastModified() is deprecated and not used, even if a provider implements it
+        final TestsProvider provider = mockProvider("org.example.ATest");
+        when(provider.lastModified()).thenReturn(1L);
+        final TestNamesSnapshot snapshot = TestNamesSnapshot.create(5, new TestsProvider[] {provider});
+        assertThat(snapshot.isCurrent(5), is(false));
+    }
+
+    private static TestsProvider mockProvider(String... testNames) {
+        final TestsProvider provider = mock(TestsProvider.class);
+        when(provider.getTestNames()).thenReturn(asList(testNames));
+        return provider;
+    }
+}
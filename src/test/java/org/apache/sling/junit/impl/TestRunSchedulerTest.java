@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.junit.TestsManager;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThrows;
+
+public class TestRunSchedulerTest {
+
+    @Test
+    public void testUnlimited() throws Exception {
+        final TestRunScheduler scheduler = new TestRunScheduler(0, 0, 60);
+        assertThat(scheduler.admit().await(), is(0L));
+        assertThat(scheduler.admit().await(), is(0L));
+        assertThat(scheduler.getRunningCount(), is(2));
+    }
+
+    @Test
+    public void testRejectWhenQueueIsFull() throws Exception {
+        final TestRunScheduler scheduler = new TestRunScheduler(1, 0, 42);
+        final TestRunScheduler.Ticket running = scheduler.admit();
+        final TestsManager.TooManyTestRunsException e =
+                assertThrows(TestsManager.TooManyTestRunsException.class, scheduler::admit);
+        assertThat(e.getRetryAfterSeconds(), is(42));
+        assertThat(scheduler.getRejectedCount(), is(1L));
+
+        running.release();
+        running.release();
+        assertThat(scheduler.getRunningCount(), is(0));
+        assertThat(scheduler.admit().await(), is(0L));
+    }
+
+    @Test
+    public void testQueuedRunWaitsForRelease() throws Exception {
+        final TestRunScheduler scheduler = new TestRunScheduler(1, 1, 60);
+        final TestRunScheduler.Ticket running = scheduler.admit();
+
+        // admission is decided immediately, only the start of the test run waits
+        final TestRunScheduler.Ticket ticket = scheduler.admit();
+        assertThat(scheduler.getQueueDepth(), is(1));
+        assertThrows(TestsManager.TooManyTestRunsException.class, scheduler::admit);
+
+        final CompletableFuture<Long> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return ticket.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertThat(queued.isDone(), is(false));
+        running.release();
+        assertThat(queued.get(10, TimeUnit.SECONDS), greaterThanOrEqualTo(50L));
+        assertThat(scheduler.getQueueDepth(), is(0));
+        assertThat(scheduler.getRunningCount(), is(1));
+        assertThat(scheduler.getQueuedCount(), is(1L));
+    }
+
+    @Test
+    public void testReleaseQueuedRun() throws Exception {
+        final TestRunScheduler scheduler = new TestRunScheduler(1, 1, 60);
+        final TestRunScheduler.Ticket running = scheduler.admit();
+        scheduler.admit().release();
+        assertThat(scheduler.getQueueDepth(), is(0));
+
+        running.release();
+        assertThat(scheduler.getRunningCount(), is(0));
+    }
+}
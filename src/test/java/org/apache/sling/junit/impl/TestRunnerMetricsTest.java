@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+public class TestRunnerMetricsTest {
+
+    private static final Description TEST = Description.createTestDescription("org.example.ATest", "test");
+
+    @Test
+    public void testPercentiles() {
+        final TestRunnerMetrics.DurationHistogram histogram = new TestRunnerMetrics.DurationHistogram();
+        assertThat(histogram.getPercentile(0.5), is(0L));
+        for (int i = 0; i < 98; i++) {
+            histogram.record(3);
+        }
+        histogram.record(150);
+        histogram.record(1234);
+
+        assertThat(histogram.getCount(), is(100L));
+        assertThat(histogram.getTotal(), is(98L * 3 + 150 + 1234));
+        assertThat(histogram.getPercentile(0.5), is(5L));
+        assertThat(histogram.getPercentile(0.99), is(200L));
+        assertThat(histogram.getPercentile(1), is(1234L));
+        assertThat(histogram.getMax(), is(1234L));
+    }
+
+    @Test
+    public void testRunAndTestCounters() throws Exception {
+        final TestRunScheduler scheduler = new TestRunScheduler(0, 0, 60);
+        final TestRunnerMetrics metrics = new TestRunnerMetrics(scheduler);
+        final RunListener listener = new TestContextRunListenerWrapper(metrics.wrap(new RunListener()));
+
+        final TestRunScheduler.Ticket ticket = scheduler.admit();
+        metrics.runStarted();
+        assertThat(metrics.getActiveRuns(), is(1));
+        metrics.discoveryFinished(TimeUnit.MILLISECONDS.toNanos(12));
+        listener.testStarted(TEST);
+        Thread.sleep(20);
+        listener.testFailure(new Failure(TEST, new AssertionError()));
+        listener.testFinished(TEST);
+        listener.testIgnored(TEST);
+        metrics.runFinished(TimeUnit.MILLISECONDS.toNanos(42), true);
+        ticket.release();
+
+        assertThat(metrics.getRunsStarted(), is(1L));
+        assertThat(metrics.getRunsCompleted(), is(1L));
+        assertThat(metrics.getRunsFailed(), is(0L));
+        assertThat(metrics.getActiveRuns(), is(0));
+        assertThat(metrics.getTestsExecuted(), is(1L));
+        assertThat(metrics.getMaxTestTimeMsec(), greaterThanOrEqualTo(20L));
+        assertThat(metrics.getTestFailures(), is(1L));
+        assertThat(metrics.getTestsIgnored(), is(1L));
+        assertThat(metrics.getLastDiscoveryTimeMsec(), is(12L));
+        assertThat(metrics.getMaxRunTimeMsec(), is(42L));
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.sling.junit.impl;
 
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.MalformedURLException;
@@ -33,8 +34,11 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -46,11 +50,15 @@ import org.apache.sling.junit.impl.servlet.PlainTextRenderer;
 import org.apache.sling.junit.sampletests.JUnit4SlingJUnit;
 import org.hamcrest.Matchers;
 import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.notification.RunListener;
 import org.junit.vintage.engine.VintageTestEngine;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
 import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
@@ -64,10 +72,15 @@ import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertTrue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -77,6 +90,9 @@ public class TestsManagerImplTest {
 
     private static final int SYSTEM_STARTUP_SECONDS = 2;
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private Set<Bundle> mockBundles = new HashSet<>();
 
     static {
@@ -118,7 +134,7 @@ public class TestsManagerImplTest {
     public void waitForSystemStartupTimeout() {
         BundleContext bundleContext = setupBundleContext(Bundle.INSTALLED);
         TestsManagerImpl testsManager = new TestsManagerImpl();
-        testsManager.activate(bundleContext);
+        testsManager.activate(bundleContext, defaultConfig());
 
         assertFalse(testsManager.isReady());
 
@@ -137,7 +153,7 @@ public class TestsManagerImplTest {
     public void waitForSystemStartupAllActiveBundles() {
         BundleContext bundleContext = setupBundleContext(Bundle.ACTIVE);
         TestsManagerImpl testsManager = new TestsManagerImpl();
-        testsManager.activate(bundleContext);
+        testsManager.activate(bundleContext, defaultConfig());
 
         assertFalse(testsManager.isReady());
 
@@ -148,6 +164,38 @@ public class TestsManagerImplTest {
         testsManager.deactivate();
     }
 
+    @Test
+    public void waitForSystemStartupEndsWhenLastBundleStarts() throws Exception {
+        BundleContext bundleContext = setupBundleContext(Bundle.INSTALLED);
+        final Bundle bundle = bundleContext.getBundle();
+        final AtomicReference<BundleListener> listener = new AtomicReference<>();
+        doAnswer(m -> {
+                    listener.set(m.getArgument(0));
+                    return null;
+                })
+                .when(bundleContext)
+                .addBundleListener(any());
+        TestsManagerImpl testsManager = new TestsManagerImpl();
+        testsManager.activate(bundleContext, defaultConfig());
+
+        final Thread starter = new Thread(() -> {
+            try {
+                TimeUnit.MILLISECONDS.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            when(bundle.getState()).thenReturn(Bundle.ACTIVE);
+            listener.get().bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        });
+        starter.start();
+
+        final long elapsed = testsManager.waitForSystemStartup();
+        starter.join();
+        assertTrue("should not wait for the timeout, waited " + elapsed, elapsed < 1000);
+
+        testsManager.deactivate();
+    }
+
     @Test
     public void testDeactivateBeforeActivateIgnored() {
         try {
@@ -157,6 +205,21 @@ public class TestsManagerImplTest {
         }
     }
 
+    private static TestsManagerImpl.Config defaultConfig() {
+        final TestsManagerImpl.Config config = mock(TestsManagerImpl.Config.class);
+        when(config.startup_required_services()).thenReturn(new String[0]);
+        when(config.junit_platform_configuration()).thenReturn(new String[0]);
+        return config;
+    }
+
+    @Test
+    public void testParseConfigurationParameters() {
+        final Map<String, String> parameters = TestsManagerImpl.parseConfigurationParameters(
+                new String[] {"junit.jupiter.execution.parallel.mode.default = concurrent", "invalid", "=invalid"});
+        assertEquals(
+                Collections.singletonMap("junit.jupiter.execution.parallel.mode.default", "concurrent"), parameters);
+    }
+
     private BundleContext setupBundleContext(int state) {
         final Bundle bundle = mock(Bundle.class);
         when(bundle.getSymbolicName()).thenReturn("mocked-bundle");
@@ -206,10 +269,18 @@ public class TestsManagerImplTest {
         final Bundle junitBundle = createMockBundle("junit-bundle", Bundle.ACTIVE);
         addBundleWiring(junitBundle, VintageTestEngine.class.getClassLoader());
         final BundleContext bundleContext = junitBundle.getBundleContext();
+        final BundleTestsProvider.Config config = mock(BundleTestsProvider.Config.class);
+        when(config.scan_pool_size()).thenReturn(2);
         final BundleTestsProvider bundleTestsProvider = activateAndRegister(
-                bundleContext, TestsProvider.class, new BundleTestsProvider(), BundleTestsProvider::activate);
+                bundleContext,
+                TestsProvider.class,
+                new BundleTestsProvider(),
+                (provider, ctx) -> provider.activate(ctx, config));
         final TestsManagerImpl testsManager = activateAndRegister(
-                bundleContext, TestsManager.class, new TestsManagerImpl(), TestsManagerImpl::activate);
+                bundleContext,
+                TestsManager.class,
+                new TestsManagerImpl(),
+                (manager, ctx) -> manager.activate(ctx, defaultConfig()));
 
         final RequestParser selector = new RequestParser(null);
         final Collection<String> testNames = testsManager.getTestNames(selector);
@@ -265,6 +336,103 @@ public class TestsManagerImplTest {
         bundleTestsProvider.deactivate();
     }
 
+    @Test
+    public void testTestClassSuppliedByMultipleBundles() throws Exception {
+        final String testClass = "org.apache.sling.junit.duplicate.ASlingJUnit";
+        createTestBundle("test-bundle-a", "org.apache.sling.junit.duplicate.*SlingJUnit", singletonList(testClass));
+        createTestBundle("test-bundle-b", "org.apache.sling.junit.duplicate.*SlingJUnit", singletonList(testClass));
+
+        final Bundle junitBundle = createMockBundle("junit-bundle", Bundle.ACTIVE);
+        final BundleTestsProvider.Config config = mock(BundleTestsProvider.Config.class);
+        final BundleTestsProvider bundleTestsProvider = new BundleTestsProvider();
+        bundleTestsProvider.activate(junitBundle.getBundleContext(), config);
+
+        assertThat(
+                "duplicate test class should be listed once",
+                bundleTestsProvider.getTestNames(),
+                Matchers.contains(testClass));
+        assertThat(bundleTestsProvider.createTestClass(testClass), Matchers.isA(Class.class));
+
+        bundleTestsProvider.deactivate();
+    }
+
+    @Test
+    public void testScanOnWorkerPool() throws Exception {
+        final List<String> classes =
+                asList("org.apache.sling.junit.pooled.ASlingJUnit", "org.apache.sling.junit.pooled.BSlingJUnit");
+        createTestBundle("test-bundle-pooled", "org.apache.sling.junit.pooled.*SlingJUnit", classes);
+
+        final Bundle junitBundle = createMockBundle("junit-bundle", Bundle.ACTIVE);
+        final BundleContext bundleContext = junitBundle.getBundleContext();
+        final File indexFile = folder.newFile(BundleTestsProvider.INDEX_FILE_NAME);
+        assertTrue(indexFile.delete());
+        when(bundleContext.getDataFile(BundleTestsProvider.INDEX_FILE_NAME)).thenReturn(indexFile);
+        when(bundleContext.getBundle(anyLong())).thenReturn(junitBundle);
+
+        final BundleTestsProvider.Config config = mock(BundleTestsProvider.Config.class);
+        when(config.scan_pool_size()).thenReturn(2);
+        final BundleTestsProvider bundleTestsProvider = new BundleTestsProvider();
+        bundleTestsProvider.activate(bundleContext, config);
+
+        assertThat(bundleTestsProvider.getTestNames(), Matchers.containsInAnyOrder(classes.toArray()));
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!indexFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue("index is saved once the startup scans are done", indexFile.exists());
+
+        bundleTestsProvider.deactivate();
+    }
+
+    @Test
+    public void testIndexNotSavedByStartupScansAfterDeactivate() throws Exception {
+        final String testClass = "org.apache.sling.junit.pooled.ASlingJUnit";
+        final CountDownLatch scanStarted = new CountDownLatch(1);
+        final CountDownLatch releaseScan = new CountDownLatch(1);
+        final Bundle testBundle = createMockBundle("test-bundle-pooled", Bundle.ACTIVE);
+        testBundle.getHeaders().put(BundleTestsProvider.SLING_TEST_REGEXP, "org.apache.sling.junit.pooled.*SlingJUnit");
+        when(testBundle.findEntries("", "*.class", true)).thenAnswer(m -> {
+            scanStarted.countDown();
+            awaitUninterruptibly(releaseScan);
+            return classesAsResourceEnumeration(singletonList(testClass));
+        });
+        when(testBundle.loadClass(testClass)).then(m -> JUnit4SlingJUnit.class);
+        addBundleWiring(testBundle, emptyMockClassloader());
+
+        final Bundle junitBundle = createMockBundle("junit-bundle", Bundle.ACTIVE);
+        final BundleContext bundleContext = junitBundle.getBundleContext();
+        when(bundleContext.getDataFile(BundleTestsProvider.INDEX_FILE_NAME))
+                .thenReturn(new File(folder.getRoot(), BundleTestsProvider.INDEX_FILE_NAME));
+        when(bundleContext.getBundle(anyLong())).thenReturn(junitBundle);
+
+        final BundleTestsProvider.Config config = mock(BundleTestsProvider.Config.class);
+        when(config.scan_pool_size()).thenReturn(2);
+        final BundleTestsProvider bundleTestsProvider = new BundleTestsProvider();
+        bundleTestsProvider.activate(bundleContext, config);
+        assertTrue(scanStarted.await(10, TimeUnit.SECONDS));
+
+        bundleTestsProvider.deactivate();
+        releaseScan.countDown();
+
+        // a scan that finishes after deactivation must not save the index with the invalid BundleContext
+        verify(bundleContext, after(500).never()).getBundle(anyLong());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     public void createFragmentBundle(String symbolicName) throws IOException {
         final Bundle bundle = createMockBundle(symbolicName, Bundle.ACTIVE);
 
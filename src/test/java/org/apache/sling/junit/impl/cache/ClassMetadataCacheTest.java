@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class ClassMetadataCacheTest {
+
+    @Test
+    void computesOnlyOnce() {
+        final AtomicInteger computations = new AtomicInteger();
+        final ClassMetadataCache<Class<?>, String> cache = new ClassMetadataCache<>(10, cls -> cls);
+
+        final Function<Class<?>, String> compute = cls -> cls.getName() + computations.incrementAndGet();
+
+        assertThat(cache.get(String.class, compute), is("java.lang.String1"));
+        assertThat(cache.get(String.class, compute), is("java.lang.String1"));
+        assertThat(computations.get(), is(1));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        final ClassMetadataCache<Class<?>, String> cache = new ClassMetadataCache<>(2, cls -> cls);
+        cache.get(String.class, Class::getName);
+        cache.get(Integer.class, Class::getName);
+        cache.get(String.class, Class::getName);
+        cache.get(Long.class, Class::getName);
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.get(String.class, cls -> "recomputed"), is("java.lang.String"));
+        assertThat(cache.get(Integer.class, cls -> "recomputed"), is("recomputed"));
+    }
+
+    @Test
+    void invalidatesEntriesOfBundle() {
+        final Bundle bundle = Mockito.mock(Bundle.class);
+        final ClassMetadataCache<Class<?>, String> cache = new ClassMetadataCache<>(10, cls -> cls);
+        cache.get(String.class, Class::getName);
+        cache.get(Integer.class, Class::getName);
+
+        try (MockedStatic<FrameworkUtil> frameworkUtil = Mockito.mockStatic(FrameworkUtil.class)) {
+            frameworkUtil.when(() -> FrameworkUtil.getBundle(String.class)).thenReturn(bundle);
+            ClassMetadataCache.invalidateAll(bundle);
+        }
+
+        assertThat(cache.size(), is(1));
+        assertThat(cache.get(String.class, cls -> "recomputed"), is("recomputed"));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.Servlet;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.ComponentContext;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.arrayContaining;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JUnitServletTest {
+
+    private final BundleContext bundleContext = mock(BundleContext.class);
+
+    private final ComponentContext componentContext = mock(ComponentContext.class);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncSupportedWhiteboardRegistration() {
+        final ServiceRegistration<Servlet> registration = mock(ServiceRegistration.class);
+        when(bundleContext.registerService(eq(Servlet.class), any(Servlet.class), any()))
+                .thenReturn(registration);
+        final JUnitServlet servlet = activate("/system/sling/junit");
+
+        final ArgumentCaptor<Dictionary<String, Object>> props = ArgumentCaptor.forClass(Dictionary.class);
+        verify(bundleContext).registerService(eq(Servlet.class), same(servlet), props.capture());
+        assertThat(
+                (String[]) props.getValue().get(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN),
+                arrayContaining("/system/sling/junit", "/system/sling/junit/*"));
+        assertThat(props.getValue().get(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED), is(true));
+
+        servlet.deactivate(componentContext);
+        verify(registration).unregister();
+    }
+
+    @Test
+    public void testNoRegistrationWithoutServletPath() {
+        activate(" ");
+        verify(bundleContext, never()).registerService(eq(Servlet.class), any(Servlet.class), any());
+    }
+
+    private JUnitServlet activate(String servletPath) {
+        final Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put(JUnitServlet.SERVLET_PATH_NAME, servletPath);
+        when(componentContext.getProperties()).thenReturn(properties);
+        when(componentContext.getBundleContext()).thenReturn(bundleContext);
+        final JUnitServlet servlet = new JUnitServlet();
+        servlet.activate(componentContext);
+        return servlet;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import org.apache.sling.junit.impl.servlet.HtmlRendererTest.ExampleTestCases;
+import org.apache.sling.junit.impl.servlet.junit5.JUnitPlatformHelper;
+import org.apache.sling.junit.impl.servlet.junit5.RunListenerAdapter;
+import org.junit.Test;
+import org.junit.vintage.engine.VintageTestEngine;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NdjsonRendererTest {
+
+    @Test
+    public void testOneJsonObjectPerLine() throws Exception {
+        final List<JsonObject> items = renderNdjsonOutput("junit4FailedAssertion");
+        assertThat(items.size(), is(3));
+
+        assertThat(items.get(0).getString(JsonRenderer.INFO_TYPE_KEY), is("info"));
+        assertThat(items.get(0).getString(JsonRenderer.INFO_SUBTYPE_KEY), is("note"));
+        assertThat(items.get(0).getString("info"), is("running"));
+
+        final JsonObject test = items.get(1);
+        assertThat(test.getString(JsonRenderer.INFO_TYPE_KEY), is("test"));
+        assertThat(
+                test.getString("description"), is("junit4FailedAssertion(" + ExampleTestCases.class.getName() + ")"));
+        assertThat(test.getString("failure"), containsString(ExampleTestCases.ASSERTION_ALWAYS_FAILS));
+
+        final JsonObject summary = items.get(2);
+        assertThat(summary.getString(JsonRenderer.INFO_TYPE_KEY), is("summary"));
+        assertThat(summary.getInt("tests"), is(1));
+        assertThat(summary.getInt("failures"), is(1));
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        final List<JsonObject> items = renderNdjsonOutput("junit4Success");
+        assertThat(items.get(1).containsKey("failure"), is(false));
+        assertThat(items.get(2).getInt("failures"), is(0));
+    }
+
+    private static List<JsonObject> renderNdjsonOutput(String methodName) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+        final NdjsonRenderer ndjsonRenderer = new NdjsonRenderer();
+        ndjsonRenderer.setup(response, "test");
+        ndjsonRenderer.info("note", "running");
+        JUnitPlatformHelper.executeTest(
+                new VintageTestEngine(), ExampleTestCases.class, methodName, new RunListenerAdapter(ndjsonRenderer));
+        ndjsonRenderer.cleanup();
+
+        final List<JsonObject> items = new ArrayList<>();
+        for (String line : out.toString().split("\\R")) {
+            try (JsonReader reader = Json.createReader(new StringReader(line))) {
+                items.add(reader.readObject());
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.junit.Renderer;
+import org.apache.sling.junit.RendererSelector;
+import org.apache.sling.junit.TestsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServletProcessorTest {
+
+    private final TestsManager testsManager = mock(TestsManager.class);
+
+    private final TestsManager.ReservedTestRun testRun = mock(TestsManager.ReservedTestRun.class);
+
+    private final Renderer renderer = mock(Renderer.class);
+
+    private final HttpServletRequest request = mock(HttpServletRequest.class);
+
+    private final HttpServletResponse response = mock(HttpServletResponse.class);
+
+    private ServletProcessor processor;
+
+    @Before
+    public void setup() {
+        when(request.getPathInfo()).thenReturn("/org.example.ATest.sse");
+        when(testsManager.reserveTestRun(any())).thenReturn(testRun);
+        processor = new ServletProcessor(testsManager, rendererSelector());
+    }
+
+    @After
+    public void cleanup() {
+        processor.close();
+    }
+
+    @Test
+    public void testNoTestsFoundBeforeRendering() throws Exception {
+        when(testsManager.reserveTestRun(any())).thenThrow(new TestsManager.NoTestCasesFoundException());
+
+        processor.doPost(request, response);
+
+        verify(response).sendError(eq(HttpServletResponse.SC_NOT_FOUND), anyString());
+        verify(renderer, never()).setup(any(), any());
+    }
+
+    @Test
+    public void testTooManyTestRunsBeforeRendering() throws Exception {
+        when(testsManager.reserveTestRun(any())).thenThrow(new TestsManager.TooManyTestRunsException(42));
+
+        processor.doPost(request, response);
+
+        verify(response).setHeader("Retry-After", "42");
+        verify(response).sendError(eq(429), anyString());
+        verify(renderer, never()).setup(any(), any());
+    }
+
+    @Test
+    public void testRendererIsCleanedUpIfTestExecutionFails() throws Exception {
+        doThrow(new IllegalStateException("boom")).when(testRun).execute(any());
+
+        assertThrows(ServletException.class, () -> processor.doPost(request, response));
+
+        verify(renderer).setup(response, ServletProcessor.class.getSimpleName());
+        verify(renderer).cleanup();
+        verify(testRun).close();
+    }
+
+    @Test
+    public void testExecuteTestsOnContainerThreadWithoutExecutor() throws Exception {
+        // like the SlingJUnitServlet, which does not execute tests asynchronously
+        when(request.isAsyncSupported()).thenReturn(true);
+        final CompletableFuture<String> executingThread = new CompletableFuture<>();
+        doAnswer(invocation -> executingThread.complete(Thread.currentThread().getName()))
+                .when(testRun)
+                .execute(any());
+
+        processor.doPost(request, response);
+
+        verify(request, never()).startAsync();
+        assertThat(executingThread.getNow(null), is(Thread.currentThread().getName()));
+        verify(renderer).cleanup();
+        verify(testRun).close();
+    }
+
+    @Test
+    public void testExecuteTestsOnExecutorThread() throws Exception {
+        final ServletProcessor asyncProcessor = new ServletProcessor(testsManager, rendererSelector(), 2);
+        try {
+            final AsyncContext asyncContext = mock(AsyncContext.class);
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync()).thenReturn(asyncContext);
+            final CompletableFuture<String> executingThread = new CompletableFuture<>();
+            doAnswer(invocation ->
+                            executingThread.complete(Thread.currentThread().getName()))
+                    .when(testRun)
+                    .execute(any());
+
+            asyncProcessor.doPost(request, response);
+
+            assertThat(executingThread.get(10, TimeUnit.SECONDS), startsWith("sling-junit-servlet-"));
+            verify(asyncContext, timeout(10000)).complete();
+            verify(renderer, timeout(10000)).cleanup();
+            verify(testRun, timeout(10000)).close();
+        } finally {
+            asyncProcessor.close();
+        }
+    }
+
+    @Test
+    public void testExecuteTestsOnContainerThreadIfExecutorIsBusy() throws Exception {
+        final ServletProcessor singleThreadProcessor = new ServletProcessor(testsManager, rendererSelector(), 1);
+        try {
+            final AsyncContext asyncContext = mock(AsyncContext.class);
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.startAsync()).thenReturn(asyncContext);
+            final CountDownLatch executing = new CountDownLatch(1);
+            final CountDownLatch blocking = new CountDownLatch(1);
+            final AtomicInteger executions = new AtomicInteger();
+            final CompletableFuture<String> secondExecutingThread = new CompletableFuture<>();
+            doAnswer(invocation -> {
+                        if (executions.incrementAndGet() == 1) {
+                            executing.countDown();
+                            return blocking.await(10, TimeUnit.SECONDS);
+                        }
+                        return secondExecutingThread.complete(
+                                Thread.currentThread().getName());
+                    })
+                    .when(testRun)
+                    .execute(any());
+
+            singleThreadProcessor.doPost(request, response);
+            assertThat(executing.await(10, TimeUnit.SECONDS), is(true));
+            singleThreadProcessor.doPost(request, response);
+            assertThat(
+                    secondExecutingThread.getNow(null),
+                    is(Thread.currentThread().getName()));
+            blocking.countDown();
+            verify(asyncContext, timeout(10000).times(2)).complete();
+        } finally {
+            singleThreadProcessor.close();
+        }
+    }
+
+    private RendererSelector rendererSelector() {
+        final RendererSelector rendererSelector = mock(RendererSelector.class);
+        when(rendererSelector.getRenderer(any())).thenReturn(renderer);
+        return rendererSelector;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.sling.junit.impl.servlet.HtmlRendererTest.ExampleTestCases;
+import org.apache.sling.junit.impl.servlet.junit5.JUnitPlatformHelper;
+import org.apache.sling.junit.impl.servlet.junit5.RunListenerAdapter;
+import org.junit.Test;
+import org.junit.vintage.engine.VintageTestEngine;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SseRendererTest {
+
+    @Test
+    public void testEvents() throws Exception {
+        final StringWriter out = new StringWriter();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+        final SseRenderer sseRenderer = new SseRenderer();
+        sseRenderer.setup(response, "test");
+        sseRenderer.info("note", "running");
+        JUnitPlatformHelper.executeTest(
+                new VintageTestEngine(),
+                ExampleTestCases.class,
+                "junit4FailedAssertion",
+                new RunListenerAdapter(sseRenderer));
+        sseRenderer.cleanup();
+
+        verify(response).setContentType("text/event-stream");
+        final String sse = out.toString();
+        assertThat(sse, containsString("event: info\ndata: {\"INFO_SUBTYPE\":\"note\",\"info\":\"running\"}\n\n"));
+        assertThat(
+                sse,
+                containsString("event: testStarted\ndata: {\"description\":\"junit4FailedAssertion("
+                        + ExampleTestCases.class.getName() + ")\"}\n\n"));
+        assertThat(sse, containsString("event: testFailure\ndata: {\"description\":"));
+        assertThat(sse, containsString(ExampleTestCases.ASSERTION_ALWAYS_FAILS));
+        assertThat(sse, containsString("event: testFinished\ndata: {\"description\":"));
+        assertThat(sse, containsString("event: testRunFinished\ndata: {\"tests\":1,\"failures\":1,"));
+    }
+
+    @Test
+    public void testHeartbeatsOnSharedScheduler() throws Exception {
+        final SseRenderer factory = new SseRenderer();
+        factory.activate();
+        try {
+            final SseRenderer first = (SseRenderer) factory.createRenderer();
+            final SseRenderer second = (SseRenderer) factory.createRenderer();
+            first.setup(mockResponse(), "test");
+            second.setup(mockResponse(), "test");
+            assertThat(factory.heartbeatScheduler.getQueue().size(), is(2));
+
+            first.cleanup();
+            second.cleanup();
+            assertThat(
+                    "heartbeats are cancelled",
+                    factory.heartbeatScheduler.getQueue().size(),
+                    is(0));
+        } finally {
+            factory.deactivate();
+        }
+    }
+
+    private static HttpServletResponse mockResponse() throws Exception {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+        return response;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.junit.impl.servlet;
+
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.junit.impl.SerializingRunListener;
+import org.apache.sling.junit.impl.TestContextRunListenerWrapper;
+import org.apache.sling.junit.impl.servlet.HtmlRendererTest.ExampleTestCases;
+import org.apache.sling.junit.impl.servlet.junit5.JUnitPlatformHelper;
+import org.apache.sling.junit.impl.servlet.junit5.RunListenerAdapter;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.junit.jupiter.engine.JupiterTestEngine;
+import org.junit.vintage.engine.VintageTestEngine;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class XmlRendererTest {
+
+    @Test
+    public void testFailure() throws Exception {
+        final String xml = renderXmlOutput("junit4FailedAssertion");
+        assertThat(xml, Matchers.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuites>"));
+        assertThat(xml, Matchers.containsString("<testsuite name=\"" + ExampleTestCases.class.getName() + "\""));
+        assertThat(xml, Matchers.containsString("tests=\"1\" failures=\"1\""));
+        assertThat(
+                xml,
+                Matchers.containsString("<failure message=\"" + ExampleTestCases.ASSERTION_ALWAYS_FAILS
+                        + "\" type=\"java.lang.AssertionError\">"));
+        assertThat(xml, Matchers.containsString("</testcase></testsuite></testsuites>"));
+    }
+
+    @Test
+    public void testSuccess() throws Exception {
+        final String xml = renderXmlOutput("junit4Success");
+        assertThat(xml, Matchers.containsString("tests=\"1\" failures=\"0\""));
+        assertThat(
+                xml,
+                Matchers.containsString(
+                        "<testcase name=\"junit4Success\" classname=\"" + ExampleTestCases.class.getName() + "\""));
+        assertThat(xml, Matchers.not(Matchers.containsString("<failure")));
+    }
+
+    @Test
+    public void testParallelJupiterClasses() throws Exception {
+        final Map<String, String> parameters = new HashMap<>();
+        parameters.put("junit.jupiter.execution.parallel.enabled", "true");
+        parameters.put("junit.jupiter.execution.parallel.mode.default", "concurrent");
+        parameters.put("junit.jupiter.execution.parallel.config.strategy", "fixed");
+        parameters.put("junit.jupiter.execution.parallel.config.fixed.parallelism", "4");
+
+        final StringWriter out = new StringWriter();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+        final XmlRenderer xmlRenderer = new XmlRenderer();
+        xmlRenderer.setup(response, "test");
+        // like the TestsManagerImpl
+        JUnitPlatformHelper.createLauncher(new JupiterTestEngine())
+                .execute(
+                        JUnitPlatformHelper.classesRequest(
+                                parameters, ParallelTestCasesA.class, ParallelTestCasesB.class),
+                        new RunListenerAdapter(
+                                new TestContextRunListenerWrapper(new SerializingRunListener(xmlRenderer))));
+        xmlRenderer.cleanup();
+
+        final Document document = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder()
+                .parse(new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.UTF_8)));
+        final NodeList testSuites = document.getElementsByTagName("testsuite");
+        assertThat(testSuites.getLength(), Matchers.is(2));
+        for (int i = 0; i < testSuites.getLength(); i++) {
+            final Element testSuite = (Element) testSuites.item(i);
+            assertThat(testSuite.getAttribute("tests"), Matchers.is("3"));
+            final NodeList testCases = testSuite.getElementsByTagName("testcase");
+            assertThat(testCases.getLength(), Matchers.is(3));
+            for (int j = 0; j < testCases.getLength(); j++) {
+                final Element testCase = (Element) testCases.item(j);
+                assertThat(testCase.getAttribute("classname"), Matchers.is(testSuite.getAttribute("name")));
+                // the test context output of tests that ran on other threads is kept
+                assertThat(testCase.getElementsByTagName("property").getLength(), Matchers.greaterThanOrEqualTo(3));
+            }
+        }
+    }
+
+    private static String renderXmlOutput(String methodName) throws Exception {
+        final StringWriter out = new StringWriter();
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getWriter()).thenReturn(new PrintWriter(out));
+        final XmlRenderer xmlRenderer = new XmlRenderer();
+        xmlRenderer.setup(response, "test");
+        JUnitPlatformHelper.executeTest(
+                new VintageTestEngine(), ExampleTestCases.class, methodName, new RunListenerAdapter(xmlRenderer));
+        xmlRenderer.cleanup();
+        return out.toString();
+    }
+
+    public static class ParallelTestCasesA {
+
+        @org.junit.jupiter.api.Test
+        public void first() throws InterruptedException {
+            Thread.sleep(20);
+        }
+
+        @org.junit.jupiter.api.Test
+        public void second() throws InterruptedException {
+            Thread.sleep(20);
+        }
+
+        @org.junit.jupiter.api.Test
+        public void third() throws InterruptedException {
+            Thread.sleep(20);
+        }
+    }
+
+    public static class ParallelTestCasesB {
+
+        @org.junit.jupiter.api.Test
+        public void first() throws InterruptedException {
+            Thread.sleep(20);
+        }
+
+        @org.junit.jupiter.api.Test
+        public void second() throws InterruptedException {
+            Thread.sleep(20);
+        }
+
+        @org.junit.jupiter.api.Test
+        public void third() throws InterruptedException {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -63,6 +63,7 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.nullValue;
@@ -236,6 +237,25 @@ class OSGiAnnotationTest {
         });
     }
 
+    @MetaTest(DelayedServiceInjection.class)
+    void injectDelayedServices(String name, Class<?> testClass, String testMethodName) throws InterruptedException {
+        final Thread registration = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            osgiContext.registerService(ServiceInterface.class, new ServiceA(), "service.ranking", 1);
+            osgiContext.registerService(ServiceInterface.class, new ServiceB(), "service.ranking", 2);
+        });
+        registration.start();
+        withMockedFrameworkUtil(() -> {
+            assertNoFailures(testClass, testMethodName);
+        });
+        registration.join();
+    }
+
     @MetaTest({BundleInjection.class, BundleContextInjection.class, ServiceInjectionGloballyAnnotated.class})
     void failOutsideOSGiEnvironment(String name, Class<?> testClass, String testMethodName) {
         assertFailure(
@@ -324,6 +344,20 @@ class OSGiAnnotationTest {
         }
     }
 
+    @OSGi
+    static class DelayedServiceInjection {
+
+        @Test
+        void delayedService(@Service(timeout = 10000) ServiceInterface service) {
+            assertNotNull(service);
+        }
+
+        @Test
+        void delayedServices(@Service(timeout = 10000, minimumCount = 2) List<ServiceInterface> services) {
+            assertThat(services, hasSize(2));
+        }
+    }
+
     @OSGi
     static class ServiceMethodInjection {
 